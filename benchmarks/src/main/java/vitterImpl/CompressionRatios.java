@@ -0,0 +1,49 @@
+package vitterImpl;
+
+import java.util.zip.Deflater;
+
+/**
+ * Prints the compression ratio (encoded size / original size) of each engine and of Deflater on the benchmark corpora,
+ * to go alongside the timings of VTreeBenchmark and DeflaterBenchmark.
+ */
+public class CompressionRatios {
+    public static void main(String[] args){
+        System.out.printf("%-12s %-6s %-6s %8s %8s %8s %8s %9s %9s%n", "corpus", "alpha", "engine", "tree/1",
+                "tree/2", "tree/3", "tree/4", "deflate", "huffman");
+        for (Corpus corpus : Corpus.values()){
+            for (String alphabet : new String[]{"text", "bytes"}){
+                char start = VTreeBenchmark.startSymbol(alphabet);
+                int characters = VTreeBenchmark.alphaCharacters(alphabet);
+                byte[] input = corpus.generate(VTreeBenchmark.CHARACTERS, start, characters);
+                for (EngineType engine : EngineType.values()){
+                    StringBuilder row = new StringBuilder(String.format("%-12s %-6s %-6s", corpus, alphabet, engine));
+                    for (int numSymbols = 1; numSymbols <= 4; numSymbols++){
+                        if (Math.pow(characters, numSymbols) > Integer.MAX_VALUE){
+                            row.append(String.format(" %8s", "-"));
+                            continue;
+                        }
+                        CoderEngine t = engine.newTree(numSymbols, start, characters);
+                        row.append(String.format(" %8.3f", t.encode(input).length / (double)input.length));
+                    }
+                    for (String strategy : new String[]{"default", "huffman"}){
+                        row.append(String.format(" %9.3f", deflate(input, strategy) / (double)input.length));
+                    }
+                    System.out.println(row);
+                }
+            }
+        }
+    }
+
+    private static int deflate(byte[] input, String strategy){
+        Deflater d = DeflaterBenchmark.newDeflater(strategy);
+        d.setInput(input);
+        d.finish();
+        byte[] buffer = new byte[2 * input.length + 64];
+        int length = 0;
+        while (!d.finished()){
+            length += d.deflate(buffer, length, buffer.length - length);
+        }
+        d.end();
+        return length;
+    }
+}
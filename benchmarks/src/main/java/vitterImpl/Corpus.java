@@ -0,0 +1,85 @@
+package vitterImpl;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic inputs for the benchmarks, the same from run to run. UNIFORM and ZIPFIAN draw on the whole alphabet they
+ * are made for; ENGLISH and LOW_ENTROPY use printable ASCII, which the text and byte alphabets both include.
+ */
+public enum Corpus {
+    //Every character of the alphabet equally likely
+    UNIFORM,
+    //The k-th character of the alphabet has a probability proportional to 1/k
+    ZIPFIAN,
+    //Common English words with spaces, punctuation and line breaks
+    ENGLISH,
+    //Long runs of a few characters
+    LOW_ENTROPY;
+
+    //Roughly the most common English words, most common first
+    private static final String[] WORDS = ("the of and to a in is it you that he was for on are with as I his they be " +
+            "at one have this from or had by hot word but what some we can out other were all there when up use your " +
+            "how said an each she which do their time if will way about many then them write would like so these her " +
+            "long make thing see him two has look more day could go come did number sound no most people my over")
+            .split(" ");
+
+    /**
+     * Generates the corpus
+     * @param length the number of characters
+     * @param start the first character of the alphabet
+     * @param characters the number of characters in the alphabet
+     * @return the characters, one per byte
+     */
+    public byte[] generate(int length, char start, int characters){
+        Random r = new Random(42);
+        byte[] b = new byte[length];
+        switch (this){
+            case UNIFORM:
+                for (int i = 0; i < length; i++){
+                    b[i] = (byte)(start + r.nextInt(characters));
+                }
+                break;
+            case ZIPFIAN:
+                double[] cumulative = new double[characters];
+                double total = 0;
+                for (int k = 0; k < characters; k++){
+                    total += 1.0 / (k + 1);
+                    cumulative[k] = total;
+                }
+                for (int i = 0; i < length; i++){
+                    int k = Arrays.binarySearch(cumulative, r.nextDouble() * total);
+                    b[i] = (byte)(start + Math.min(characters - 1, (k < 0) ? -k - 1 : k));
+                }
+                break;
+            case ENGLISH:
+                int i = 0;
+                int line = 0;
+                while (i < length){
+                    //Zipf-like choice of word
+                    String w = WORDS[(int)(WORDS.length * Math.pow(r.nextDouble(), 3))];
+                    String sep = (r.nextInt(12) == 0) ? ". " : (r.nextInt(10) == 0) ? ", " : " ";
+                    if (line > 70){
+                        sep = "\n";
+                        line = 0;
+                    }
+                    String s = w + sep;
+                    for (int j = 0; j < s.length() && i < length; j++){
+                        b[i++] = (byte)s.charAt(j);
+                    }
+                    line += s.length();
+                }
+                break;
+            case LOW_ENTROPY:
+                int j = 0;
+                while (j < length){
+                    byte c = (byte)((r.nextInt(10) < 8) ? 'a' : (r.nextBoolean() ? 'b' : 'c'));
+                    for (int run = 1 + r.nextInt(64); run > 0 && j < length; run--){
+                        b[j++] = c;
+                    }
+                }
+                break;
+        }
+        return b;
+    }
+}
@@ -0,0 +1,91 @@
+package vitterImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * java.util.zip as a baseline for VTreeBenchmark, on the same corpora and in the same units (MB/s). "huffman" is
+ * Deflater's Huffman-only strategy, the closest to what VTree does; "default" adds LZ77 matching.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeflaterBenchmark {
+    @Param({"UNIFORM", "ZIPFIAN", "ENGLISH", "LOW_ENTROPY"})
+    public Corpus corpus;
+
+    @Param({"default", "huffman"})
+    public String strategy;
+
+    private byte[] input;
+    private byte[] encoded;
+    private byte[] buffer;
+    private Deflater deflater;
+    private Inflater inflater;
+
+    @Setup
+    public void setUp(){
+        input = corpus.generate(VTreeBenchmark.CHARACTERS, VTree.TEXT_START_SYMBOL, VTree.TEXT_ALPHA_CHARACTERS);
+        buffer = new byte[2 * input.length + 64];
+        deflater = newDeflater(strategy);
+        inflater = new Inflater();
+        encoded = Arrays.copyOf(buffer, deflate());
+    }
+
+    @TearDown
+    public void tearDown(){
+        deflater.end();
+        inflater.end();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VTreeBenchmark.CHARACTERS)
+    public int deflate(){
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()){
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VTreeBenchmark.CHARACTERS)
+    public int inflate() throws DataFormatException{
+        inflater.reset();
+        inflater.setInput(encoded);
+        int length = 0;
+        while (!inflater.finished()){
+            length += inflater.inflate(buffer, length, buffer.length - length);
+        }
+        return length;
+    }
+
+    static Deflater newDeflater(String strategy){
+        Deflater d = new Deflater();
+        if (strategy.equals("huffman")) d.setStrategy(Deflater.HUFFMAN_ONLY);
+        return d;
+    }
+}
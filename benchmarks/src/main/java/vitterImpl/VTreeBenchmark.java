@@ -0,0 +1,145 @@
+package vitterImpl;
+
+import exceptions.InvalidSequenceException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of VTree's hot paths across corpora, alphabets, NUM_SYMBOLS and engines (see EngineType).
+ *
+ * Every benchmark covers CHARACTERS characters of input per invocation, so the default throughput mode reports
+ * characters per microsecond, which is MB/s. Run with "-bm avgt -tu ns" for nanoseconds per character (multiply by
+ * numSymbols for nanoseconds per symbol), and with "-prof gc" for the allocation rate. CompressionRatios prints the
+ * compression ratio of the same inputs, and DeflaterBenchmark gives a baseline.
+ *
+ * - encode and decode are the whole in-memory path, a new tree each time.
+ * - add builds a tree from nothing, so includes splitting the NYT node for every new symbol.
+ * - findNode and adapt work on a tree that has already seen the corpus, the steady state of a long input.
+ *
+ * The byte alphabet allows at most 3 characters per symbol, so its numSymbols=4 trials fail at setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VTreeBenchmark {
+    static final int CHARACTERS = 1 << 18;
+
+    @Param({"UNIFORM", "ZIPFIAN", "ENGLISH", "LOW_ENTROPY"})
+    public Corpus corpus;
+
+    @Param({"1", "2", "3", "4"})
+    public int numSymbols;
+
+    @Param({"text", "bytes"})
+    public String alphabet;
+
+    @Param({"VITTER", "FGK"})
+    public EngineType engine;
+
+    private byte[] input;
+    private byte[] encoded;
+    //The symbol numbers of the input
+    private int[] symbols;
+    //A tree that has seen the whole input
+    private VTree warm;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        input = corpus.generate(CHARACTERS, startSymbol(alphabet), alphaCharacters(alphabet));
+        encoded = newTree().encode(input);
+        symbols = symbolNumbers(newTree().getAlphabet(), input);
+    }
+
+    //Rebuilt every iteration so that weights can not overflow however long adapt runs
+    @Setup(Level.Iteration)
+    public void warmUp(){
+        warm = newTree();
+        for (int s : symbols){
+            warm.add(warm.findNode(s), s);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHARACTERS)
+    public byte[] encode(){
+        return newTree().encode(input);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHARACTERS)
+    public byte[] decode() throws InvalidSequenceException{
+        return newTree().decode(encoded);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHARACTERS)
+    public VTree add(){
+        VTree t = newTree();
+        for (int s : symbols){
+            t.add(t.findNode(s), s);
+        }
+        return t;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHARACTERS)
+    public void findNode(Blackhole bh){
+        for (int s : symbols){
+            bh.consume(warm.findNode(s));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHARACTERS)
+    public VTree adapt(){
+        for (int s : symbols){
+            warm.add(warm.findNode(s), s);
+        }
+        return warm;
+    }
+
+    //The package-private overload, as findNode and adapt work on the tree itself rather than through CoderEngine
+    private VTree newTree(){
+        return engine.newTree(numSymbols, startSymbol(alphabet), alphaCharacters(alphabet), 0);
+    }
+
+    static char startSymbol(String alphabet){
+        return alphabet.equals("bytes") ? VTree.BYTE_START_SYMBOL : VTree.TEXT_START_SYMBOL;
+    }
+
+    static int alphaCharacters(String alphabet){
+        return alphabet.equals("bytes") ? VTree.BYTE_ALPHA_CHARACTERS : VTree.TEXT_ALPHA_CHARACTERS;
+    }
+
+    /**
+     * Splits input into whole symbols, ignoring any characters short of a symbol at the end
+     */
+    static int[] symbolNumbers(Alphabet a, byte[] input){
+        int[] symbols = new int[input.length / a.numSymbols];
+        for (int i = 0; i < symbols.length; i++){
+            int s = 0;
+            for (int j = 0; j < a.numSymbols; j++){
+                s = a.extendSymbolNumber(s, (char)(input[i * a.numSymbols + j] & 0xFF));
+            }
+            symbols[i] = s;
+        }
+        return symbols;
+    }
+}
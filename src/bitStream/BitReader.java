@@ -0,0 +1,125 @@
+package bitStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads back the bits written by a BitWriter, most significant bit first.
+ *
+ * The last byte of the stream is the trailer written by BitWriter.finish, so the reader always keeps two bytes of
+ * lookahead until the end of the stream is reached. Padding bits are never returned.
+ */
+public class BitReader {
+    //The size of the internal byte buffer
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfStream = false;
+    //True once the trailer has been read and no more bits will arrive
+    private boolean finished = false;
+    //Bits read but not yet returned. Only the lowest "available" bits are meaningful.
+    private long accumulator = 0;
+    private int available = 0;
+    //The total number of bits moved into the accumulator
+    private long loaded = 0;
+
+    /**
+     * Creates a BitReader on top of a stream produced by a BitWriter
+     * @param in the stream to read from
+     */
+    public BitReader(InputStream in){
+        this.in = in;
+    }
+
+    /**
+     * Reads a single bit
+     * @return the bit (0 or 1) or -1 if there are no more bits
+     * @throws IOException when the underlying stream can not be read
+     */
+    public int readBit() throws IOException{
+        if (available == 0){
+            refill();
+            if (available == 0) return -1;
+        }
+        available--;
+        return (int)(accumulator >>> available) & 1;
+    }
+
+    /**
+     * Reads several bits as a number, the first bit read being the most significant.
+     * @param length the number of bits to read, between 0 and 31
+     * @return the number read or -1 if fewer than length bits remain
+     * @throws IOException when the underlying stream can not be read
+     */
+    public int readBits(int length) throws IOException{
+        if (available < length){
+            refill();
+            if (available < length) return -1;
+        }
+        available -= length;
+        return (int)((accumulator >>> available) & ((1L << length) - 1));
+    }
+
+    /**
+     * @return true if at least one more bit can be read
+     * @throws IOException when the underlying stream can not be read
+     */
+    public boolean hasMoreBits() throws IOException{
+        if (available == 0) refill();
+        return available > 0;
+    }
+
+    /**
+     * Discards the bits remaining in the current byte, the counterpart of BitWriter.alignToByte
+     */
+    public void alignToByte(){
+        int skip = (int)(-(loaded - available) & 7);
+        available -= Math.min(skip, available);
+    }
+
+    /**
+     * Moves bytes into the accumulator until it holds at least 56 bits or the stream is exhausted
+     */
+    private void refill() throws IOException{
+        while (available <= 56 && !finished){
+            int remaining = limit - position;
+            if (remaining < 3 && !endOfStream){
+                fill();
+            }else if (remaining >= 3){
+                //A full data byte, as both the last data byte and the trailer follow it
+                accumulator = (accumulator << 8) | (buffer[position++] & 0xFF);
+                available += 8;
+                loaded += 8;
+            }else {
+                if (remaining == 2){
+                    //The last data byte, the trailer tells us how many of its bits are padding
+                    int valid = 8 - (buffer[position + 1] & 0x07);
+                    accumulator = (accumulator << valid) | ((buffer[position] & 0xFF) >>> (8 - valid));
+                    available += valid;
+                    loaded += valid;
+                }
+                position = limit;
+                finished = true;
+            }
+        }
+    }
+
+    /**
+     * Compacts the buffer and reads more bytes from the stream
+     */
+    private void fill() throws IOException{
+        int remaining = limit - position;
+        System.arraycopy(buffer, position, buffer, 0, remaining);
+        position = 0;
+        limit = remaining;
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0){
+            endOfStream = true;
+        }else {
+            limit += read;
+        }
+    }
+}
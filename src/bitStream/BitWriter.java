@@ -0,0 +1,170 @@
+package bitStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Packs individual bits into bytes and writes them to an OutputStream, most significant bit first.
+ *
+ * Bits are collected in a long accumulator and whole bytes are moved into an internal buffer, which is handed to the
+ * stream when it is full or when flush is called. A BitWriter on a channel fills a direct buffer instead, which the
+ * channel writes as it is rather than copying it into a direct buffer of its own, as it would an array.
+ *
+ * A stream produced by this class is closed by finish, which pads the last byte with zeros and appends one trailer
+ * byte holding the number of padding bits, so that a BitReader knows exactly where the code ends.
+ */
+public class BitWriter {
+    //The size of the internal byte buffer
+    private static final int BUFFER_SIZE = 8192;
+    //The size of the direct buffer used for a channel, larger so that each write to the channel does more
+    private static final int CHANNEL_BUFFER_SIZE = 1 << 16;
+
+    //Where the bytes are written: a stream, or else a channel
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    //Bytes not yet written, up to position; the direct buffer is only used for a channel
+    private final byte[] buffer;
+    private final ByteBuffer direct;
+    private int position = 0;
+    //Bits not yet moved into the buffer. Only the lowest "pending" bits are meaningful.
+    private long accumulator = 0;
+    private int pending = 0;
+    //The total number of code bits written, excluding padding and the trailer
+    private long bitCount = 0;
+
+    /**
+     * Creates a BitWriter on top of a stream
+     * @param out the stream the packed bytes are written to
+     */
+    public BitWriter(OutputStream out){
+        this.out = out;
+        this.channel = null;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.direct = null;
+    }
+
+    /**
+     * Creates a BitWriter on top of a channel, gathering the packed bytes in a direct buffer
+     * @param out the channel the packed bytes are written to, which is not closed
+     */
+    public BitWriter(WritableByteChannel out){
+        this.out = null;
+        this.channel = out;
+        this.buffer = null;
+        this.direct = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+    }
+
+    /**
+     * Writes a single bit
+     * @param bit 1 to write a one, anything else writes a zero
+     * @throws IOException when the underlying stream can not be written to
+     */
+    public void writeBit(int bit) throws IOException{
+        accumulator = (accumulator << 1) | (bit == 1 ? 1 : 0);
+        pending++;
+        bitCount++;
+        if (pending == 8) drain();
+    }
+
+    /**
+     * Writes the lowest bits of a value, most significant of those bits first.
+     * @param bits the value holding the bits
+     * @param length the number of bits to write, between 0 and 64
+     * @throws IOException when the underlying stream can not be written to
+     */
+    public void write(long bits, int length) throws IOException{
+        if (length > 32){
+            write(bits >>> 32, length - 32);
+            length = 32;
+        }
+        if (length <= 0) return;
+        accumulator = (accumulator << length) | (bits & ((1L << length) - 1));
+        pending += length;
+        bitCount += length;
+        drain();
+    }
+
+    /**
+     * Pads the output with zeros up to the next byte boundary.
+     * @return the number of padding bits written (0 to 7)
+     * @throws IOException when the underlying stream can not be written to
+     */
+    public int alignToByte() throws IOException{
+        if (pending == 0) return 0;
+        int padding = 8 - pending;
+        accumulator <<= padding;
+        pending = 8;
+        drain();
+        return padding;
+    }
+
+    /**
+     * Hands every complete byte to the underlying stream and flushes it, or writes it to the channel. Bits of an
+     * incomplete byte are kept.
+     * @throws IOException when the underlying stream can not be written to
+     */
+    public void flush() throws IOException{
+        flushBuffer();
+        if (out != null) out.flush();
+    }
+
+    /**
+     * Ends the code: pads the last byte, appends the trailer byte and flushes the stream. The stream is not closed.
+     * @throws IOException when the underlying stream can not be written to
+     */
+    public void finish() throws IOException{
+        int padding = alignToByte();
+        writeByte(padding);
+        flush();
+    }
+
+    /**
+     * @return the number of code bits written so far, excluding any padding
+     */
+    public long getBitCount(){
+        return bitCount;
+    }
+
+    /**
+     * @return true when the next bit written will start a new byte
+     */
+    public boolean isByteAligned(){
+        return pending == 0;
+    }
+
+    /**
+     * Moves every complete byte from the accumulator into the buffer
+     */
+    private void drain() throws IOException{
+        while (pending >= 8){
+            pending -= 8;
+            writeByte((int)(accumulator >>> pending));
+        }
+    }
+
+    private void writeByte(int b) throws IOException{
+        if (direct != null){
+            if (!direct.hasRemaining()) flushBuffer();
+            direct.put((byte)b);
+            return;
+        }
+        if (position == buffer.length) flushBuffer();
+        buffer[position++] = (byte)b;
+    }
+
+    private void flushBuffer() throws IOException{
+        if (direct != null){
+            direct.flip();
+            while (direct.hasRemaining()){
+                channel.write(direct);
+            }
+            direct.clear();
+            return;
+        }
+        if (position == 0) return;
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
@@ -0,0 +1,11 @@
+package exceptions;
+
+/**
+ * This exception is thrown when the input has a character outside the alphabet, or no tree can be built for an
+ * alphabet
+ */
+public class AlphabetException extends IllegalArgumentException {
+    public AlphabetException(String message){
+        super(message);
+    }
+}
@@ -0,0 +1,83 @@
+package test.batchcoder;
+
+import org.junit.Test;
+import userInterface.BatchCoder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import static test.util.TestData.randomBytes;
+
+/**
+ * Tests for coding many files at once with BatchCoder, using JUnit 4.
+ */
+public class BatchCoderTest {
+    private static Path tree() throws Exception{
+        Path dir = Files.createTempDirectory("batch");
+        Files.createDirectories(dir.resolve("a/b"));
+        Files.write(dir.resolve("one.bin"), randomBytes(5000, 1));
+        Files.write(dir.resolve("a/two.bin"), randomBytes(7001, 2));
+        Files.write(dir.resolve("a/b/three.txt"), randomBytes(300, 3));
+        Files.write(dir.resolve("a/b/empty.bin"), new byte[0]);
+        return dir;
+    }
+
+    private static void delete(Path dir) throws Exception{
+        try (Stream<Path> walk = Files.walk(dir)){
+            walk.sorted((x, y) -> y.compareTo(x)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void directoryRoundTripsKeepingRelativePaths() throws Exception{
+        Path in = tree();
+        Path encoded = Files.createTempDirectory("batch");
+        Path decoded = Files.createTempDirectory("batch");
+        BatchCoder encoder = new BatchCoder(true, 1, true);
+        encoder.setWorkers(3);
+        BatchCoder.Summary summary = encoder.code(in.toString(), encoded.toString());
+        assertEquals(4, summary.files);
+        assertEquals(12301, summary.inputBytes);
+        assertTrue(summary.failed.isEmpty());
+        assertTrue(summary.ratio() < 1);
+
+        assertEquals(4, new BatchCoder(false, 1, true).code(encoded.toString(), decoded.toString()).files);
+        for (String name : new String[]{"one.bin", "a/two.bin", "a/b/three.txt", "a/b/empty.bin"}){
+            assertArrayEquals(Files.readAllBytes(in.resolve(name)), Files.readAllBytes(decoded.resolve(name)));
+        }
+        delete(in);
+        delete(encoded);
+        delete(decoded);
+    }
+
+    @Test
+    public void globSelectsFiles() throws Exception{
+        Path in = tree();
+        Path out = Files.createTempDirectory("batch");
+        BatchCoder.Summary summary = new BatchCoder(true, 1, true).code(in + "/a/**.bin", out.toString());
+        assertEquals(2, summary.files);
+        assertTrue(Files.exists(out.resolve("two.bin")));
+        assertTrue(Files.exists(out.resolve("b/empty.bin")));
+        assertFalse(Files.exists(out.resolve("b/three.txt")));
+        delete(in);
+        delete(out);
+    }
+
+    @Test
+    public void failuresAreReportedWithoutStoppingTheBatch() throws Exception{
+        Path in = Files.createTempDirectory("batch");
+        Path out = Files.createTempDirectory("batch");
+        Files.write(in.resolve("good.txt"), "plain text\n".getBytes("US-ASCII"));
+        //Not text, and not a container, so neither encodes nor decodes
+        Files.write(in.resolve("bad.txt"), new byte[]{0, 1, 2, (byte)200});
+        BatchCoder.Summary summary = new BatchCoder(true, 1, false).code(in.toString(), out.toString());
+        assertEquals(1, summary.files);
+        assertEquals(1, summary.failed.size());
+        //Reported with why it failed
+        assertEquals("Character 0 is not in the alphabet", summary.failed.get("bad.txt"));
+        delete(in);
+        delete(out);
+    }
+}
@@ -0,0 +1,95 @@
+package test.bitstream;
+
+import bitStream.BitReader;
+import bitStream.BitWriter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the BitWriter and BitReader pair, using JUnit 4.
+ */
+public class BitStreamTest {
+    ByteArrayOutputStream bytes;
+    BitWriter w;
+
+    @Before
+    public void setUp(){
+        bytes = new ByteArrayOutputStream();
+        w = new BitWriter(bytes);
+    }
+
+    private BitReader reader(){
+        return new BitReader(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void bitsArePackedMostSignificantFirst() throws IOException{
+        w.write(0b1011, 4);
+        w.write(0b0110, 4);
+        w.writeBit(1);
+        w.finish();
+        byte[] b = bytes.toByteArray();
+        //One full byte, one padded byte and the trailer
+        assertEquals(3, b.length);
+        assertEquals((byte)0b10110110, b[0]);
+        assertEquals((byte)0b10000000, b[1]);
+        assertEquals(7, b[2]);
+        assertEquals(9, w.getBitCount());
+    }
+
+    @Test
+    public void readBackExactlyWhatWasWritten() throws IOException{
+        w.write(0b101, 3);
+        w.write(0x1234567890L, 40);
+        w.writeBit(0);
+        w.finish();
+        BitReader r = reader();
+        assertEquals(0b101, r.readBits(3));
+        assertEquals(0x12, r.readBits(8));
+        assertEquals(0x34567890, r.readBits(32));
+        assertEquals(0, r.readBit());
+        //Padding is never returned
+        assertFalse(r.hasMoreBits());
+        assertEquals(-1, r.readBit());
+    }
+
+    @Test
+    public void emptyStreamHasNoBits() throws IOException{
+        w.finish();
+        assertEquals(1, bytes.toByteArray().length);
+        assertFalse(reader().hasMoreBits());
+    }
+
+    @Test
+    public void longStreamsCrossBufferBoundaries() throws IOException{
+        for (int i = 0; i < 100000; i++){
+            w.write(i, 17);
+        }
+        w.finish();
+        BitReader r = reader();
+        for (int i = 0; i < 100000; i++){
+            assertEquals(i & 0x1FFFF, r.readBits(17));
+        }
+        assertFalse(r.hasMoreBits());
+    }
+
+    @Test
+    public void alignmentSkipsPadding() throws IOException{
+        w.write(0b11, 2);
+        assertEquals(6, w.alignToByte());
+        assertTrue(w.isByteAligned());
+        w.write(0b1, 1);
+        w.finish();
+        BitReader r = reader();
+        assertEquals(0b11, r.readBits(2));
+        r.alignToByte();
+        assertEquals(1, r.readBit());
+        assertFalse(r.hasMoreBits());
+    }
+}
@@ -0,0 +1,149 @@
+package test.compressionserver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import userInterface.CompressionServer;
+import vitterImpl.VTree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static test.util.TestData.randomBytes;
+
+/**
+ * Tests for serving encodings and decodings over TCP with CompressionServer, using JUnit 4.
+ */
+public class CompressionServerTest {
+    CompressionServer server;
+
+    @Before
+    public void start() throws IOException{
+        server = new CompressionServer(0);
+        Thread t = new Thread(() -> {
+            try {
+                server.serve();
+            }catch (IOException e){
+                throw new RuntimeException(e);
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @After
+    public void stop() throws IOException{
+        server.close();
+    }
+
+    /**
+     * A reply: the status of its last frame, and the result sent before it or the error message
+     */
+    private static class Reply {
+        final byte status;
+        final byte[] payload;
+
+        Reply(byte status, byte[] payload){
+            this.status = status;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Sends a request and its stream, reading the frames sent back
+     */
+    private Reply request(String line, byte[] data) throws IOException{
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), server.getPort())){
+            OutputStream out = s.getOutputStream();
+            out.write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(data);
+            s.shutdownOutput();
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            while (true){
+                byte status = in.readByte();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                if (status == CompressionServer.DATA){
+                    result.write(payload);
+                    continue;
+                }
+                //The last frame, after which the server closes the connection
+                assertEquals(-1, in.read());
+                return new Reply(status, status == CompressionServer.OK ? result.toByteArray() : payload);
+            }
+        }
+    }
+
+    /**
+     * Sends a request that should succeed, returning the result
+     */
+    private byte[] result(String line, byte[] data) throws IOException{
+        Reply reply = request(line, data);
+        assertEquals(CompressionServer.OK, reply.status);
+        return reply.payload;
+    }
+
+    @Test
+    public void concurrentRequestsRoundTrip() throws Exception{
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 32; i++){
+            int seed = i;
+            results.add(clients.submit(() -> {
+                byte[] m = randomBytes(20000 + seed * 100, seed);
+                int symbols = 1 + seed % 2;
+                byte[] code = result("e " + symbols + " b", m);
+                assertArrayEquals(VTree.forBytes(symbols).encode(m), code);
+                assertArrayEquals(m, result("decode " + symbols + " b", code));
+                return null;
+            }));
+        }
+        for (Future<?> f : results){
+            f.get();
+        }
+        clients.shutdown();
+    }
+
+    @Test
+    public void textModeIsTheDefault() throws Exception{
+        byte[] text = "It was the best of times,\nit was the worst of times.\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] code = result("e", text);
+        assertArrayEquals(text, result("d", code));
+    }
+
+    @Test
+    public void invalidRequestIsRefused() throws Exception{
+        Reply reply = request("x 1", new byte[10]);
+        assertEquals(CompressionServer.ERROR, reply.status);
+        assertTrue(new String(reply.payload, StandardCharsets.US_ASCII).startsWith("Please maintain format"));
+        assertEquals(CompressionServer.ERROR, request("e 9 b", new byte[10]).status);
+    }
+
+    @Test
+    public void invalidEncodingEndsWithAnError() throws Exception{
+        byte[] code = result("e", "It was the best of times,\nit was the worst of times.\n".getBytes("US-ASCII"));
+        //Keep a trailer saying there is no padding, but cut the code part way through
+        byte[] cut = Arrays.copyOf(code, code.length / 2);
+        cut[cut.length - 1] = 0;
+        assertEquals(CompressionServer.ERROR, request("d", cut).status);
+    }
+
+    @Test
+    public void resultsLargerThanAFrameRoundTrip() throws Exception{
+        byte[] m = randomBytes(1 << 20, 7);
+        assertArrayEquals(m, result("d 1 b", result("e 1 b", m)));
+    }
+}
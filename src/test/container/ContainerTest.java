@@ -0,0 +1,205 @@
+package test.container;
+
+import exceptions.InvalidSequenceException;
+import org.junit.Test;
+import vitterImpl.ContainerDecoder;
+import vitterImpl.ContainerEncoder;
+import vitterImpl.ContainerReader;
+import vitterImpl.TreeMetrics;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static test.util.TestData.randomBytes;
+
+/**
+ * Tests for the block container written by ContainerEncoder and read by ContainerDecoder, using JUnit 4.
+ */
+public class ContainerTest {
+    @Test
+    public void roundTripsWithoutBeingToldTheSymbols() throws Exception{
+        //Lengths that are not a whole number of blocks or symbols
+        byte[] m = randomBytes(10001, 1);
+        for (int symbols = 1; symbols <= 3; symbols++){
+            ContainerEncoder e = ContainerEncoder.forBytes(symbols);
+            e.setBlockSize(1000);
+            assertArrayEquals(m, new ContainerDecoder().decode(e.encode(m)));
+        }
+        byte[] text = "It was the best of times,\r\nit was the worst of times.".getBytes("US-ASCII");
+        ContainerEncoder e = new ContainerEncoder(2);
+        e.setBlockSize(7);
+        assertArrayEquals(text, new ContainerDecoder().decode(e.encode(text)));
+        assertArrayEquals(new byte[0], new ContainerDecoder().decode(new ContainerEncoder(1).encode(new byte[0])));
+    }
+
+    @Test
+    public void parallelEncodingMatchesSequential() throws Exception{
+        byte[] m = randomBytes(50000, 2);
+        ContainerEncoder one = ContainerEncoder.forBytes(1);
+        one.setBlockSize(4096);
+        one.setPool(new ForkJoinPool(1));
+        ContainerEncoder many = ContainerEncoder.forBytes(1);
+        many.setBlockSize(4096);
+        many.setPool(new ForkJoinPool(4));
+        assertArrayEquals(one.encode(m), many.encode(m));
+    }
+
+    @Test
+    public void rescaleLimitIsRecorded() throws Exception{
+        byte[] m = randomBytes(50000, 5);
+        ContainerEncoder e = ContainerEncoder.forBytes(1);
+        e.setBlockSize(20000);
+        byte[] plain = e.encode(m);
+        e.setRescaleLimit(512);
+        byte[] rescaled = e.encode(m);
+        assertFalse(Arrays.equals(plain, rescaled));
+        assertArrayEquals(m, new ContainerDecoder().decode(rescaled));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rescaleLimitBelowTwiceTheAlphabetIsRefused(){
+        ContainerEncoder.forBytes(1).setRescaleLimit(511);
+    }
+
+    @Test
+    public void filesRoundTrip() throws Exception{
+        File in = File.createTempFile("container", ".bin");
+        File out = File.createTempFile("container", ".vtc");
+        File back = File.createTempFile("container", ".dec");
+        byte[] m = randomBytes(30000, 3);
+        Files.write(in.toPath(), m);
+
+        ContainerEncoder e = ContainerEncoder.forBytes(2);
+        e.setBlockSize(1024);
+        e.setPool(new ForkJoinPool(2));
+        e.encode(in.getPath(), out.getPath());
+        assertTrue(ContainerDecoder.isContainer(out.getPath()));
+        assertFalse(ContainerDecoder.isContainer(in.getPath()));
+        //The file and in memory forms are the same
+        assertArrayEquals(Files.readAllBytes(out.toPath()), e.encode(m));
+
+        new ContainerDecoder().decode(out.getPath(), back.getPath());
+        assertArrayEquals(m, Files.readAllBytes(back.toPath()));
+        in.delete();
+        out.delete();
+        back.delete();
+    }
+
+    @Test
+    public void resumedEncodingMatchesUninterrupted() throws Exception{
+        File in = File.createTempFile("container", ".bin");
+        File out = File.createTempFile("container", ".vtc");
+        byte[] m = randomBytes(10000, 6);
+        Files.write(in.toPath(), m);
+
+        ContainerEncoder e = ContainerEncoder.forBytes(1);
+        e.setBlockSize(1000);
+        e.setPool(new ForkJoinPool(1));
+        e.setCheckpoints(true);
+        //Stops the encoding part way through the sixth block, after the checkpoint for the fourth
+        AtomicInteger symbols = new AtomicInteger();
+        e.setMetrics(new TreeMetrics(){
+            @Override
+            public void symbol(int codeBits, int escapeBits){
+                if (symbols.incrementAndGet() == 5500) throw new IllegalStateException("Stopped");
+            }
+        });
+        try {
+            e.encode(in.getPath(), out.getPath());
+            fail();
+        }catch (IllegalStateException expected){
+        }
+        File checkpoint = new File(ContainerEncoder.checkpointFile(out.getPath()));
+        assertTrue(checkpoint.exists());
+
+        ContainerEncoder.fromCheckpoint(out.getPath()).resume(in.getPath(), out.getPath());
+        ContainerEncoder reference = ContainerEncoder.forBytes(1);
+        reference.setBlockSize(1000);
+        assertArrayEquals(reference.encode(m), Files.readAllBytes(out.toPath()));
+        assertFalse(checkpoint.exists());
+        in.delete();
+        out.delete();
+    }
+
+    @Test(expected = InvalidSequenceException.class)
+    public void truncatedContainerIsRejected() throws Exception{
+        byte[] c = ContainerEncoder.forBytes(1).encode(randomBytes(1000, 4));
+        new ContainerDecoder().decode(Arrays.copyOf(c, c.length - 1));
+    }
+
+    @Test(expected = InvalidSequenceException.class)
+    public void headerClaimingMoreBlocksThanItHoldsIsRejected() throws Exception{
+        byte[] c = ContainerEncoder.forBytes(1).encode(randomBytes(1000, 4));
+        //A length of Integer.MAX_VALUE - 8 characters in blocks of one, which the header has no room to list
+        ByteBuffer b = ByteBuffer.wrap(c);
+        b.putLong(22, Integer.MAX_VALUE - 8);
+        b.putInt(30, 1);
+        b.putInt(34, Integer.MAX_VALUE - 8);
+        new ContainerDecoder().decode(c);
+    }
+
+    @Test
+    public void decodeRangeMatchesWholeDecoding() throws Exception{
+        byte[] m = randomBytes(10001, 5);
+        ContainerEncoder e = ContainerEncoder.forBytes(3);
+        e.setBlockSize(999);
+        byte[] c = e.encode(m);
+        File f = File.createTempFile("container", ".vtc");
+        Files.write(f.toPath(), c);
+        try (ContainerReader memory = new ContainerReader(c); ContainerReader file = new ContainerReader(f.getPath())){
+            assertEquals(m.length, memory.length());
+            long[][] ranges = {{0, 0}, {0, 1}, {998, 999}, {998, 1000}, {500, 7000}, {9990, 10001}, {0, 10001}};
+            for (long[] r : ranges){
+                byte[] expected = Arrays.copyOfRange(m, (int)r[0], (int)r[1]);
+                assertArrayEquals(expected, memory.decodeRange(r[0], r[1]));
+                assertArrayEquals(expected, file.decodeRange(r[0], r[1]));
+            }
+        }
+        f.delete();
+    }
+
+    @Test
+    public void fileReaderCanBeSharedByThreads() throws Exception{
+        byte[] m = randomBytes(20000, 6);
+        ContainerEncoder e = ContainerEncoder.forBytes(1);
+        e.setBlockSize(500);
+        File f = File.createTempFile("container", ".vtc");
+        Files.write(f.toPath(), e.encode(m));
+        try (ContainerReader file = new ContainerReader(f.getPath())){
+            Thread[] threads = new Thread[8];
+            AtomicInteger wrong = new AtomicInteger();
+            for (int t = 0; t < threads.length; t++){
+                int seed = t;
+                threads[t] = new Thread(() -> {
+                    Random r = new Random(seed);
+                    try {
+                        for (int i = 0; i < 1000; i++){
+                            int from = r.nextInt(m.length);
+                            int to = from + r.nextInt(Math.min(600, m.length - from) + 1);
+                            if (!Arrays.equals(Arrays.copyOfRange(m, from, to), file.decodeRange(from, to))){
+                                wrong.incrementAndGet();
+                            }
+                        }
+                    }catch (Exception ex){
+                        wrong.incrementAndGet();
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) t.join();
+            assertEquals(0, wrong.get());
+        }
+        f.delete();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void decodeRangeChecksBounds() throws Exception{
+        new ContainerReader(ContainerEncoder.forBytes(1).encode(new byte[10])).decodeRange(5, 11);
+    }
+}
@@ -0,0 +1,113 @@
+package test.contextcoder;
+
+import exceptions.InvalidSequenceException;
+import org.junit.Test;
+import vitterImpl.ContextCoder;
+import vitterImpl.EngineType;
+import vitterImpl.VTree;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static test.util.TestData.randomBytes;
+
+/**
+ * Tests for ContextCoder, using JUnit 4.
+ */
+public class ContextCoderTest {
+    private static byte[] logLines(int lines, long seed){
+        String[] levels = {"INFO", "WARN", "DEBUG", "ERROR"};
+        String[] words = {"request", "served", "connection", "closed", "user", "login", "timeout", "retrying"};
+        Random r = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++){
+            sb.append("2024-05-").append(10 + r.nextInt(20)).append(' ').append(levels[r.nextInt(4)]).append(' ');
+            for (int w = 0; w < 5; w++){
+                sb.append(words[r.nextInt(words.length)]).append(' ');
+            }
+            sb.append(r.nextInt(1000)).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void textRoundTripsSmallerThanOneTree() throws Exception{
+        byte[] m = logLines(2000, 1);
+        byte[] code = new ContextCoder(1).encode(m);
+        byte[] order0 = new VTree(1, VTree.TEXT_START_SYMBOL, VTree.TEXT_ALPHA_CHARACTERS, (OutputStream)null)
+                .encode(m);
+        assertTrue(code.length < order0.length * 0.8);
+        assertArrayEquals(m, new ContextCoder(1).decode(code));
+    }
+
+    @Test
+    public void bytesRoundTripForEveryEngine() throws Exception{
+        byte[] m = randomBytes(20000, 2);
+        for (EngineType engine : EngineType.values()){
+            for (int symbols = 1; symbols <= 2; symbols++){
+                ContextCoder e = new ContextCoder(symbols, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS,
+                        engine);
+                byte[] code = e.encode(m);
+                e.reset();
+                assertArrayEquals(code, e.encode(m));
+                ContextCoder d = new ContextCoder(symbols, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS,
+                        engine);
+                assertArrayEquals(m, d.decode(code));
+            }
+        }
+    }
+
+    @Test
+    public void memoryLimitBoundsTheContexts() throws Exception{
+        byte[] m = new byte[50000];
+        new Random(3).nextBytes(m);
+        ContextCoder e = ContextCoder.forBytes(1);
+        e.setMemoryLimit(64 << 10);
+        byte[] code = e.encode(m);
+        //256 contexts of byte symbols take well over 64KB
+        assertTrue(e.getContextCount() < 256);
+        ContextCoder d = ContextCoder.forBytes(1);
+        d.setMemoryLimit(64 << 10);
+        assertArrayEquals(m, d.decode(code));
+    }
+
+    @Test
+    public void filesRoundTrip() throws Exception{
+        File in = File.createTempFile("context", ".txt");
+        File out = File.createTempFile("context", ".vtx");
+        File back = File.createTempFile("context", ".dec");
+        //Not a whole number of symbols, so the last is padded
+        byte[] m = Arrays.copyOf(logLines(500, 4), 20001);
+        Files.write(in.toPath(), m);
+
+        new ContextCoder(2).encode(in.getPath(), out.getPath());
+        assertTrue(ContextCoder.isContext(out.getPath()));
+        assertFalse(ContextCoder.isContext(in.getPath()));
+        ContextCoder.decode(out.getPath(), back.getPath());
+        assertArrayEquals(m, Files.readAllBytes(back.toPath()));
+        in.delete();
+        out.delete();
+        back.delete();
+    }
+
+    @Test(expected = InvalidSequenceException.class)
+    public void truncatedFileIsRejected() throws Exception{
+        File in = File.createTempFile("context", ".txt");
+        File out = File.createTempFile("context", ".vtx");
+        File back = File.createTempFile("context", ".dec");
+        in.deleteOnExit();
+        out.deleteOnExit();
+        back.deleteOnExit();
+        Files.write(in.toPath(), logLines(100, 5));
+        new ContextCoder(1).encode(in.getPath(), out.getPath());
+        byte[] code = Files.readAllBytes(out.toPath());
+        //The header records the length, so a code that ends early is caught wherever it ends
+        Files.write(out.toPath(), Arrays.copyOf(code, code.length / 2));
+        ContextCoder.decode(out.getPath(), back.getPath());
+    }
+}
@@ -0,0 +1,75 @@
+package test.fgktree;
+
+import org.junit.Test;
+import test.vtree.VTreeTest;
+import vitterImpl.CoderEngine;
+import vitterImpl.ContainerDecoder;
+import vitterImpl.ContainerEncoder;
+import vitterImpl.EngineType;
+import vitterImpl.FGKTree;
+import vitterImpl.VTree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static test.util.TestData.randomBytes;
+
+/**
+ * Tests for the FGK engine, and for choosing an engine with EngineType, using JUnit 4.
+ */
+public class FGKTreeTest {
+    @Test
+    public void everyEngineRoundTrips() throws Exception{
+        byte[] m = randomBytes(20000, 1);
+        for (EngineType type : EngineType.values()){
+            for (int symbols = 1; symbols <= 2; symbols++){
+                CoderEngine e = type.newTree(symbols, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS);
+                byte[] code = e.encode(m);
+                e.reset();
+                assertArrayEquals(code, e.encode(m));
+                CoderEngine d = type.newTree(symbols, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS);
+                assertArrayEquals(m, d.decode(code));
+
+                ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+                d.reset();
+                d.encode(new ByteArrayInputStream(m), streamed);
+                assertArrayEquals(code, streamed.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void fgkKeepsHuffmanCodeButNotLeastHeight() throws Exception{
+        Random r = new Random(3);
+        VTree f = new FGKTree(1, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS, (OutputStream)null);
+        boolean taller = false;
+        for (int i = 0; i < 5000; i++){
+            f.add(String.valueOf((char)(r.nextInt(1 + r.nextInt(64)) * r.nextInt(4))));
+            long[] least = VTreeTest.leastPathLengths(f);
+            long[] lengths = VTreeTest.pathLengths(f);
+            assertEquals(least[0], lengths[0]);
+            assertTrue(lengths[1] >= least[1]);
+            taller |= lengths[1] > least[1];
+        }
+        assertTrue(taller);
+    }
+
+    @Test
+    public void containerRecordsItsEngine() throws Exception{
+        byte[] m = randomBytes(30000, 2);
+        ContainerEncoder vitter = ContainerEncoder.forBytes(1);
+        vitter.setBlockSize(10000);
+        ContainerEncoder fgk = ContainerEncoder.forBytes(1);
+        fgk.setBlockSize(10000);
+        fgk.setEngine(EngineType.FGK);
+        byte[] v = vitter.encode(m);
+        byte[] f = fgk.encode(m);
+        assertFalse(Arrays.equals(Arrays.copyOf(v, 24), Arrays.copyOf(f, 24)));
+        assertArrayEquals(m, new ContainerDecoder().decode(v));
+        assertArrayEquals(m, new ContainerDecoder().decode(f));
+    }
+}
@@ -0,0 +1,124 @@
+package test.metrics;
+
+import bitStream.BitReader;
+import bitStream.BitWriter;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import vitterImpl.ContainerEncoder;
+import vitterImpl.CountingMetrics;
+import vitterImpl.VTree;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the metrics a VTree reports through TreeMetrics, using JUnit 4.
+ */
+public class MetricsTest {
+    private static final String TEXT = "It was the best of times, it was the worst of times, it was the age of wisdom";
+
+    @Test
+    public void encodingAndDecodingCountTheSame() throws Exception{
+        CountingMetrics encoding = new CountingMetrics();
+        VTree t = new VTree(1);
+        t.setMetrics(encoding);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitWriter w = new BitWriter(bytes);
+        t.encode(TEXT, w);
+        long bits = w.getBitCount();
+        w.finish();
+
+        CountingMetrics decoding = new CountingMetrics();
+        VTree u = new VTree(1);
+        u.setMetrics(decoding);
+        assertEquals(TEXT, u.decode(new BitReader(new ByteArrayInputStream(bytes.toByteArray()))));
+
+        assertEquals(TEXT.length(), encoding.getSymbols());
+        assertEquals(TEXT.chars().distinct().count(), encoding.getEscapes());
+        assertEquals(bits, encoding.getBits());
+        long sum = 0;
+        for (long count : encoding.getCodeLengthHistogram()) sum += count;
+        assertEquals(TEXT.length(), sum);
+        assertTrue(encoding.getSwaps() > 0);
+        assertTrue(encoding.getIncrements() >= TEXT.length());
+
+        //Both trees went through the same states
+        assertEquals(encoding.getSymbols(), decoding.getSymbols());
+        assertEquals(encoding.getEscapes(), decoding.getEscapes());
+        assertEquals(encoding.getBits(), decoding.getBits());
+        assertEquals(encoding.getSwaps(), decoding.getSwaps());
+        assertEquals(encoding.getIncrements(), decoding.getIncrements());
+        assertEquals(encoding.getMaxDepth(), decoding.getMaxDepth());
+        assertArrayEquals(encoding.getCodeLengthHistogram(), decoding.getCodeLengthHistogram());
+    }
+
+    @Test
+    public void streamsAndContainersCount() throws Exception{
+        byte[] m = TEXT.getBytes("US-ASCII");
+        CountingMetrics metrics = new CountingMetrics();
+        VTree t = VTree.forBytes(1, "output.txt");
+        t.setMetrics(metrics);
+        byte[] code = t.encode(m);
+        assertEquals(m.length, metrics.getSymbols());
+        assertTrue(metrics.getEncodeNanos() > 0);
+
+        metrics.reset();
+        VTree u = VTree.forBytes(1, "output.txt");
+        u.setMetrics(metrics);
+        assertArrayEquals(m, u.decode(code));
+        assertEquals(m.length, metrics.getSymbols());
+        assertEquals(0, metrics.getEncodeNanos());
+        assertTrue(metrics.getDecodeNanos() > 0);
+
+        metrics.reset();
+        ContainerEncoder e = ContainerEncoder.forBytes(1);
+        e.setBlockSize(10);
+        e.setMetrics(metrics);
+        e.encode(m);
+        assertEquals(m.length, metrics.getSymbols());
+    }
+
+    @Test
+    public void registersAsAnMBean() throws Exception{
+        CountingMetrics metrics = new CountingMetrics();
+        ObjectName name = metrics.register("MetricsTest");
+        try {
+            VTree t = new VTree(1);
+            t.setMetrics(metrics);
+            t.encode(TEXT, new BitWriter(new ByteArrayOutputStream()));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals((long)TEXT.length(), server.getAttribute(name, "Symbols"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "Symbols"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void recordsFlightRecorderEvents() throws Exception{
+        File file = File.createTempFile("metrics", ".jfr");
+        try (Recording recording = new Recording()){
+            recording.enable("vitterImpl.Coding");
+            recording.start();
+            new VTree(1).encode(TEXT, new BitWriter(new ByteArrayOutputStream()));
+            recording.stop();
+            recording.dump(file.toPath());
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+            assertEquals(1, events.size());
+            assertTrue(events.get(0).getBoolean("encoding"));
+            assertEquals(TEXT.length(), events.get(0).getLong("symbols"));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package test.staticcoder;
+
+import exceptions.InvalidSequenceException;
+import org.junit.Test;
+import vitterImpl.StaticCoder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+import static test.util.TestData.randomBytes;
+
+/**
+ * Tests for StaticCoder, using JUnit 4.
+ */
+public class StaticCoderTest {
+    @Test
+    public void bytesRoundTripForEverySymbolSize() throws Exception{
+        //Not a whole number of symbols, so the last is padded
+        byte[] m = randomBytes(50001, 1);
+        for (int symbols = 1; symbols <= 3; symbols++){
+            byte[] code = StaticCoder.forBytes(symbols).encode(m);
+            assertArrayEquals(m, StaticCoder.decode(code));
+        }
+    }
+
+    @Test
+    public void textRoundTrips() throws Exception{
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++){
+            sb.append("The quick brown fox jumps over the lazy dog ").append(i).append('\n');
+        }
+        byte[] m = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] code = new StaticCoder(2).encode(m);
+        assertTrue(code.length < m.length);
+        assertArrayEquals(m, StaticCoder.decode(code));
+    }
+
+    @Test
+    public void emptyAndRepeatedInputRoundTrip() throws Exception{
+        assertArrayEquals(new byte[0], StaticCoder.decode(StaticCoder.forBytes(1).encode(new byte[0])));
+        byte[] m = new byte[1000];
+        Arrays.fill(m, (byte)'a');
+        byte[] code = StaticCoder.forBytes(1).encode(m);
+        //One bit per symbol
+        assertTrue(code.length < m.length / 8 + 32);
+        assertArrayEquals(m, StaticCoder.decode(code));
+    }
+
+    @Test
+    public void filesRoundTripAcrossChunks() throws Exception{
+        File in = File.createTempFile("static", ".bin");
+        File out = File.createTempFile("static", ".vth");
+        File back = File.createTempFile("static", ".dec");
+        byte[] m = randomBytes((3 << 20) + 5, 2);
+        Files.write(in.toPath(), m);
+
+        StaticCoder c = StaticCoder.forBytes(2);
+        c.setPool(new ForkJoinPool(2));
+        c.encode(in.getPath(), out.getPath());
+        assertTrue(StaticCoder.isStatic(out.getPath()));
+        assertFalse(StaticCoder.isStatic(in.getPath()));
+        //The file and in memory forms are the same
+        assertArrayEquals(Files.readAllBytes(out.toPath()), c.encode(m));
+
+        StaticCoder.decode(out.getPath(), back.getPath());
+        assertArrayEquals(m, Files.readAllBytes(back.toPath()));
+        in.delete();
+        out.delete();
+        back.delete();
+    }
+
+    @Test(expected = InvalidSequenceException.class)
+    public void truncatedCodeIsRejected() throws Exception{
+        byte[] code = StaticCoder.forBytes(1).encode(randomBytes(1000, 3));
+        StaticCoder.decode(Arrays.copyOf(code, code.length - 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void charactersOutsideTheAlphabetAreRejected(){
+        new StaticCoder(1).encode(new byte[]{'a', 0, 'b'});
+    }
+}
@@ -0,0 +1,150 @@
+package test.streamdecoder;
+
+import exceptions.InvalidSequenceException;
+import org.junit.Test;
+import vitterImpl.StreamDecoder;
+import vitterImpl.StreamEncoder;
+import vitterImpl.VTree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static test.util.TestData.randomBytes;
+
+/**
+ * Tests for decoding a piece at a time with StreamDecoder, using JUnit 4.
+ */
+public class StreamDecoderTest {
+    static final String TEXT = "It was the best of times,\nit was the worst of times,\nit was the age of wisdom.";
+
+    private static byte[] encode(String s, int symbols) throws IOException{
+        byte[] input = s.getBytes("US-ASCII");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamEncoder e = new StreamEncoder(new VTree(symbols));
+        e.setInput(input, 0, input.length);
+        e.finish();
+        e.encode(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void decodesChunksSplitAnywhere() throws Exception{
+        for (int symbols = 1; symbols <= 3; symbols++){
+            byte[] code = encode(TEXT, symbols);
+            for (int chunk = 1; chunk <= 5; chunk++){
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                StreamDecoder d = new StreamDecoder(new VTree(symbols));
+                for (int i = 0; i < code.length; i += chunk){
+                    d.setInput(code, i, Math.min(chunk, code.length - i));
+                    d.decode(out);
+                }
+                d.finish();
+                d.decode(out);
+                assertTrue(d.finished());
+                String expected = TEXT;
+                while (expected.length() % symbols != 0) expected += "\n";
+                assertEquals(expected, out.toString("US-ASCII"));
+            }
+        }
+    }
+
+    @Test
+    public void symbolsAreWrittenAsSoonAsTheyAreFlushed() throws Exception{
+        byte[] input = TEXT.getBytes("US-ASCII");
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamEncoder e = new StreamEncoder(new VTree(1));
+        StreamDecoder d = new StreamDecoder(new VTree(1));
+        int sent = 0;
+        for (int i = 0; i < input.length; i += 10){
+            int len = Math.min(10, input.length - i);
+            e.setInput(input, i, len);
+            e.flush();
+            e.encode(code);
+            byte[] b = code.toByteArray();
+            d.setInput(b, sent, b.length - sent);
+            d.decode(out);
+            sent = b.length;
+            //Everything sent so far has been decoded without waiting for the end of the stream
+            assertEquals(TEXT.substring(0, i + len), out.toString("US-ASCII"));
+        }
+        e.finish();
+        e.encode(code);
+        byte[] b = code.toByteArray();
+        d.setInput(b, sent, b.length - sent);
+        d.finish();
+        d.decode(out);
+        assertEquals(TEXT, out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void channelsRoundTripThroughMappedFiles() throws Exception{
+        //Larger than the size from which files are mapped rather than read
+        byte[] m = randomBytes(3 << 20, 1);
+        byte[] code = VTree.forBytes(1).encode(m);
+        Path in = Files.createTempFile("channels", ".bin");
+        Path encoded = Files.createTempFile("channels", ".vtr");
+        Path back = Files.createTempFile("channels", ".dec");
+        Files.write(in, m);
+        try (FileChannel i = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel o = FileChannel.open(encoded, StandardOpenOption.WRITE)){
+            VTree.forBytes(1).encode(i, o);
+            assertEquals(m.length, i.position());
+        }
+        assertArrayEquals(code, Files.readAllBytes(encoded));
+        try (FileChannel i = FileChannel.open(encoded, StandardOpenOption.READ);
+             FileChannel o = FileChannel.open(back, StandardOpenOption.WRITE)){
+            VTree.forBytes(1).decode(i, o);
+        }
+        assertArrayEquals(m, Files.readAllBytes(back));
+
+        //Channels that are not files are read into a buffer
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VTree.forBytes(1).decode(Channels.newChannel(new ByteArrayInputStream(code)), Channels.newChannel(out));
+        assertArrayEquals(m, out.toByteArray());
+        Files.delete(in);
+        Files.delete(encoded);
+        Files.delete(back);
+    }
+
+    @Test(expected = InvalidSequenceException.class)
+    public void truncatedStreamIsInvalid() throws Exception{
+        byte[] code = encode(TEXT, 1);
+        //Keep a trailer saying there is no padding, but cut the code part way through
+        byte[] cut = Arrays.copyOf(code, code.length / 2);
+        cut[cut.length - 1] = 0;
+        StreamDecoder d = new StreamDecoder(new VTree(1));
+        d.setInput(cut, 0, cut.length);
+        d.finish();
+        d.decode(new ByteArrayOutputStream());
+    }
+
+    @Test(expected = InvalidSequenceException.class)
+    public void streamWithoutTrailerIsInvalid() throws Exception{
+        StreamDecoder d = new StreamDecoder(new VTree(1));
+        d.setInput(new byte[0], 0, 0);
+        d.finish();
+        d.decode(new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void emptyStreamIsOnlyATrailer() throws Exception{
+        byte[] code = encode("", 1);
+        assertEquals(1, code.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamDecoder d = new StreamDecoder(new VTree(1));
+        d.setInput(code, 0, code.length);
+        d.finish();
+        d.decode(out);
+        assertTrue(d.finished());
+        assertEquals(0, out.size());
+    }
+}
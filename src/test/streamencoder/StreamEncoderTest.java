@@ -0,0 +1,141 @@
+package test.streamencoder;
+
+import bitStream.BitReader;
+import bitStream.BitWriter;
+import org.junit.Test;
+import vitterImpl.StreamEncoder;
+import vitterImpl.VTree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static test.util.TestData.randomBytes;
+
+/**
+ * Tests for encoding a piece at a time with StreamEncoder, using JUnit 4.
+ */
+public class StreamEncoderTest {
+    static final String TEXT = "It was the best of times,\nit was the worst of times,\nit was the age of wisdom.";
+
+    private static byte[] encodeWhole(String s, int symbols) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitWriter w = new BitWriter(bytes);
+        new VTree(symbols).encode(s, w);
+        w.finish();
+        return bytes.toByteArray();
+    }
+
+    private static String decode(byte[] b, int symbols) throws Exception{
+        return new VTree(symbols).decode(new BitReader(new ByteArrayInputStream(b)));
+    }
+
+    @Test
+    public void chunkedInputMatchesWholeInput() throws Exception{
+        byte[] input = TEXT.getBytes("US-ASCII");
+        for (int symbols = 1; symbols <= 3; symbols++){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamEncoder e = new StreamEncoder(new VTree(symbols));
+            for (int i = 0; i < input.length; i += 7){
+                e.setInput(input, i, Math.min(7, input.length - i));
+                e.encode(out);
+                assertTrue(e.needsInput());
+            }
+            e.finish();
+            e.encode(out);
+            assertTrue(e.finished());
+            assertArrayEquals(encodeWhole(TEXT, symbols), out.toByteArray());
+        }
+    }
+
+    @Test
+    public void directBufferInputMatchesArrayInput() throws Exception{
+        byte[] input = TEXT.getBytes("US-ASCII");
+        for (int symbols = 1; symbols <= 3; symbols++){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamEncoder e = new StreamEncoder(new VTree(symbols));
+            ByteBuffer direct = ByteBuffer.allocateDirect(input.length);
+            direct.put(input).flip();
+            for (int i = 0; i < input.length; i += 7){
+                direct.limit(Math.min(i + 7, input.length));
+                e.setInput(direct);
+                assertFalse(e.needsInput());
+                e.encode(out);
+                assertTrue(e.needsInput());
+                assertEquals(direct.limit(), direct.position());
+            }
+            e.finish();
+            e.encode(out);
+            assertArrayEquals(encodeWhole(TEXT, symbols), out.toByteArray());
+        }
+    }
+
+    @Test
+    public void lastSymbolIsPaddedWithNewLines() throws Exception{
+        byte[] input = "abcde".getBytes("US-ASCII");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamEncoder e = new StreamEncoder(new VTree(3));
+        e.setInput(input, 0, input.length);
+        e.finish();
+        e.encode(out);
+        assertEquals("abcde\n", decode(out.toByteArray(), 3));
+    }
+
+    @Test
+    public void syncFlushAlignsOutputAndDecodes() throws Exception{
+        byte[] input = TEXT.getBytes("US-ASCII");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamEncoder e = new StreamEncoder(new VTree(1));
+        int half = input.length / 2;
+        e.setInput(input, 0, half);
+        e.flush();
+        e.encode(out);
+
+        //Everything so far can be decoded on its own, given a trailer with no padding
+        byte[] prefix = Arrays.copyOf(out.toByteArray(), out.size() + 1);
+        assertEquals(TEXT.substring(0, half), decode(prefix, 1));
+
+        e.setInput(input, half, input.length - half);
+        e.flush();
+        e.encode(out);
+        e.finish();
+        e.encode(out);
+        assertEquals(TEXT, decode(out.toByteArray(), 1));
+    }
+
+    @Test
+    public void steadyStateEncodingDoesNotAllocate() throws Exception{
+        //Allocation counters are a HotSpot extension
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        byte[] input = randomBytes(StreamEncoder.BUFFER_SIZE, 9);
+        OutputStream discard = new OutputStream(){
+            @Override
+            public void write(int b){}
+
+            @Override
+            public void write(byte[] b, int off, int len){}
+        };
+        StreamEncoder e = new StreamEncoder(VTree.forBytes(1, "output.txt"));
+        //Every symbol has been seen and the buffers have grown, after which nothing more should be allocated
+        for (int i = 0; i < 100; i++){
+            e.setInput(input, 0, input.length);
+            e.encode(discard);
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100; i++){
+            e.setInput(input, 0, input.length);
+            e.encode(discard);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        //Allow for the call to getThreadAllocatedBytes itself, but not a byte per symbol
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
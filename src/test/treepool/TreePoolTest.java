@@ -0,0 +1,114 @@
+package test.treepool;
+
+import org.junit.Test;
+import vitterImpl.TreePool;
+import vitterImpl.VTree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for resetting trees and sharing them through a TreePool, using JUnit 4.
+ */
+public class TreePoolTest {
+    private static byte[] message(Random r){
+        byte[] b = new byte[1 + r.nextInt(2000)];
+        for (int i = 0; i < b.length; i++){
+            b[i] = (byte)(r.nextInt(8) * r.nextInt(32));
+        }
+        return b;
+    }
+
+    @Test
+    public void resetTreeEncodesLikeANewOne() throws Exception{
+        Random r = new Random(1);
+        VTree t = VTree.forBytes(2);
+        for (int i = 0; i < 20; i++){
+            byte[] m = message(r);
+            if (m.length % 2 == 1) m = Arrays.copyOf(m, m.length + 1);
+            t.reset();
+            byte[] code = t.encode(m);
+            assertArrayEquals(VTree.forBytes(2).encode(m), code);
+            t.reset();
+            assertArrayEquals(m, t.decode(code));
+        }
+    }
+
+    @Test
+    public void resetFromSnapshotDoesNotAllocate() throws Exception{
+        //Allocation counters are a HotSpot extension
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        VTree trained = VTree.forBytes(1);
+        trained.train(message(new Random(3)));
+        VTree t = new VTree(trained.snapshot());
+        for (int i = 0; i < 100; i++){
+            t.reset();
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100; i++){
+            t.reset();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        //Allow for the call to getThreadAllocatedBytes itself, but not a Node per leaf
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void streamsAreNotClosed() throws Exception{
+        byte[] m = message(new Random(2));
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        VTree t = VTree.forBytes(1);
+        t.encode(new ByteArrayInputStream(m), code);
+        assertArrayEquals(VTree.forBytes(1).encode(m), code.toByteArray());
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        t.reset();
+        t.decode(new ByteArrayInputStream(code.toByteArray()), decoded);
+        assertArrayEquals(m, decoded.toByteArray());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void treeWithoutOutputRefusesFileMethods() throws Exception{
+        VTree.forBytes(1).encode(new ByteArrayInputStream(new byte[1]));
+    }
+
+    @Test
+    public void poolIsSafeToShare() throws Exception{
+        TreePool pool = new TreePool(() -> VTree.forBytes(1), 4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int task = 0; task < 32; task++){
+                long seed = task;
+                results.add(executor.submit(() -> {
+                    Random r = new Random(seed);
+                    for (int i = 0; i < 50; i++){
+                        byte[] m = message(r);
+                        byte[] code = pool.encode(m);
+                        assertArrayEquals(VTree.forBytes(1).encode(m), code);
+                        assertArrayEquals(m, pool.decode(code));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : results){
+                f.get();
+            }
+        }finally {
+            executor.shutdown();
+        }
+        assertTrue(pool.idleCount() <= 4);
+    }
+}
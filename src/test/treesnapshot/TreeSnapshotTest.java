@@ -0,0 +1,120 @@
+package test.treesnapshot;
+
+import exceptions.InvalidSequenceException;
+import org.junit.Test;
+import vitterImpl.CoderEngine;
+import vitterImpl.FGKTree;
+import vitterImpl.TreePool;
+import vitterImpl.TreeSnapshot;
+import vitterImpl.VTree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for trained trees and the snapshots taken of them, using JUnit 4.
+ */
+public class TreeSnapshotTest {
+    private static final byte[] CORPUS = ("GET /index.html HTTP/1.1\r\nHost: example.com\r\nAccept: text/html\r\n" +
+            "GET /style.css HTTP/1.1\r\nHost: example.com\r\nAccept: text/css\r\n").getBytes();
+    private static final byte[] MESSAGE = "GET /about.html HTTP/1.1\r\nHost: example.com\r\n".getBytes();
+
+    private static TreeSnapshot copy(TreeSnapshot s) throws Exception{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        s.write(new DataOutputStream(bytes));
+        return TreeSnapshot.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void primedTreesCompressShortMessagesBetter() throws Exception{
+        VTree trainer = VTree.forBytes(1);
+        trainer.train(CORPUS);
+        TreeSnapshot snapshot = trainer.snapshot();
+        byte[] primed = new VTree(snapshot).encode(MESSAGE);
+        assertTrue(primed.length < VTree.forBytes(1).encode(MESSAGE).length);
+        //Decoding works from a copy read back, as it would in another process
+        assertArrayEquals(MESSAGE, new VTree(copy(snapshot)).decode(primed));
+    }
+
+    @Test
+    public void frequencyTablesTrainToo() throws Exception{
+        int[] frequencies = new int[256];
+        for (byte b : CORPUS) frequencies[b & 0xFF]++;
+        VTree counted = VTree.forBytes(1);
+        counted.train(frequencies);
+        VTree trained = VTree.forBytes(1);
+        trained.train(CORPUS);
+        //Both know the same symbols with the same weights, so give the same snapshot
+        byte[] a = new VTree(counted.snapshot()).encode(MESSAGE);
+        byte[] b = new VTree(trained.snapshot()).encode(MESSAGE);
+        assertArrayEquals(a, b);
+        assertEquals(CORPUS.length, counted.getList().getLast().getWeight());
+    }
+
+    @Test
+    public void resetReturnsToTheSnapshot() throws Exception{
+        VTree trainer = VTree.forBytes(1);
+        trainer.train(CORPUS);
+        TreeSnapshot snapshot = trainer.snapshot();
+        TreePool pool = new TreePool(() -> new VTree(snapshot), 2);
+        byte[] expected = new VTree(snapshot).encode(MESSAGE);
+        for (int i = 0; i < 5; i++){
+            byte[] code = pool.encode(MESSAGE);
+            assertArrayEquals(expected, code);
+            assertArrayEquals(MESSAGE, pool.decode(code));
+        }
+    }
+
+    @Test
+    public void snapshotsAreCompact() throws Exception{
+        VTree trainer = VTree.forBytes(1);
+        trainer.train(CORPUS);
+        TreeSnapshot snapshot = trainer.snapshot();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.write(new DataOutputStream(bytes));
+        //The header, then about two bytes a symbol
+        assertTrue(bytes.size() <= 26 + 3 * snapshot.symbolCount());
+        assertArrayEquals(bytes.toByteArray(), toBytes(copy(snapshot)));
+    }
+
+    @Test
+    public void snapshotsStartTreesOfTheirKind() throws Exception{
+        VTree trainer = new FGKTree(1, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS, (OutputStream)null);
+        trainer.train(CORPUS);
+        TreeSnapshot snapshot = copy(trainer.snapshot());
+        CoderEngine tree = snapshot.newTree();
+        assertTrue(tree instanceof FGKTree);
+        byte[] code = tree.encode(MESSAGE);
+        assertArrayEquals(new FGKTree(snapshot).encode(MESSAGE), code);
+        assertArrayEquals(MESSAGE, snapshot.newTree().decode(code));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void snapshotsOfOtherTreesAreRefused() throws Exception{
+        VTree trainer = new FGKTree(1, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS, (OutputStream)null);
+        trainer.train(CORPUS);
+        new VTree(trainer.snapshot());
+    }
+
+    @Test(expected = InvalidSequenceException.class)
+    public void corruptSnapshotIsRejected() throws Exception{
+        VTree trainer = VTree.forBytes(1);
+        trainer.train(CORPUS);
+        byte[] b = toBytes(trainer.snapshot());
+        //Give the first leaf, an ASCII character so one byte long, a weight of 0
+        b[27] = 0;
+        TreeSnapshot.read(new DataInputStream(new ByteArrayInputStream(b)));
+    }
+
+    private static byte[] toBytes(TreeSnapshot s) throws Exception{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        s.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,26 @@
+package test.util;
+
+import java.util.Random;
+
+/**
+ * Inputs shared by the tests.
+ */
+public final class TestData {
+    private TestData(){}
+
+    /**
+     * Creates bytes that are random but skewed, products of two values below 16, so they compress a little and have
+     * blocks of many sizes in a tree
+     * @param length the number of bytes
+     * @param seed the seed, the same seed giving the same bytes
+     * @return the bytes
+     */
+    public static byte[] randomBytes(int length, long seed){
+        byte[] b = new byte[length];
+        Random r = new Random(seed);
+        for (int i = 0; i < length; i++){
+            b[i] = (byte)(r.nextInt(16) * r.nextInt(16));
+        }
+        return b;
+    }
+}
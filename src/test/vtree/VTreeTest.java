@@ -4,11 +4,23 @@ import org.junit.Before;
 import org.junit.Test;
 import org.testng.annotations.BeforeTest;
 import test.node.NodeTest;
+import vitterImpl.CountingMetrics;
+import vitterImpl.FGKTree;
 import vitterImpl.Node;
 import vitterImpl.VTree;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -124,7 +136,7 @@ public class VTreeTest{
         n = t.head.left;
         assertEquals(3, n.getWeight());
         assertEquals(2, n.right.getWeight());
-        assertEquals(' ', n.right.getValue());
+        assertEquals(" ", n.right.getValue());
         n = t.head.left.left;
         assertEquals(1, n.getWeight());
         assertEquals(1, n.right.getWeight());
@@ -133,7 +145,9 @@ public class VTreeTest{
     }
 
     @Test
-    public void emulateExampleInSpec(){
+    public void emulateExampleInSpec() throws IOException{
+        //The shapes are those of FGK's swaps, where Vitter's algorithm slides
+        t = new FGKTree(1);
         for (int i =0; i<10; i++){
             t.add("e");
         }
@@ -160,7 +174,8 @@ public class VTreeTest{
     }
 
     @Test
-    public void specExampleExtended(){
+    public void specExampleExtended() throws IOException{
+        t = new FGKTree(1);
         for (int i =0; i<10; i++){
             t.add("e");
         }
@@ -199,10 +214,11 @@ public class VTreeTest{
         assertEquals(6, t.head.right.right.getWeight());
     }
 
-    /* Note: This example comes from Sayood, 2012.
+    /* Note: This example comes from Sayood, 2012, whose update is FGK's.
     */
     @Test
-    public void aardvTest(){
+    public void aardvTest() throws IOException{
+        t = new FGKTree(1);
         Node n = t.head;
 
         t.add("a");
@@ -279,6 +295,167 @@ public class VTreeTest{
         assertEquals(5, list[8].getWeight());
     }
 
+    @Test
+    public void numberingKeepsSiblingProperty(){
+        String text = "it was the best of times, it was the worst of times, it was the age of wisdom";
+        for (int i = 0; i < text.length(); i++){
+            t.add(text.substring(i, i + 1));
+            int previous = 0;
+            for (Node n: t.getList()){
+                assertTrue(n.getWeight() >= previous);
+                previous = n.getWeight();
+                if (!n.isLeaf()){
+                    assertEquals(n.left.getWeight() + n.right.getWeight(), n.getWeight());
+                }
+            }
+            assertEquals(i + 1, t.head.getWeight());
+        }
+    }
+
+    @Test
+    public void rescalingKeepsSiblingProperty() throws Exception{
+        String text = "it was the best of times, it was the worst of times, it was the age of wisdom";
+        t.setRescaleLimit(2 * 117);
+        for (int i = 0; i < 20 * text.length(); i++){
+            t.add(text.substring(i % text.length(), i % text.length() + 1));
+            int previous = 0;
+            for (Node n: t.getList()){
+                assertTrue(n.getWeight() >= previous);
+                previous = n.getWeight();
+                if (!n.isLeaf()){
+                    assertEquals(n.left.getWeight() + n.right.getWeight(), n.getWeight());
+                }
+            }
+            assertTrue(t.head.getWeight() < 2 * 117);
+            assertTrue(t.isNYTNode(t.getList().getFirst()));
+        }
+        //The encoder and decoder rescale at the same points
+        StringBuilder m = new StringBuilder();
+        for (int i = 0; i < 20; i++) m.append(text);
+        VTree e = new VTree();
+        e.setRescaleLimit(2 * 117);
+        String code = e.encode(m.toString());
+        VTree d = new VTree();
+        d.setRescaleLimit(2 * 117);
+        assertEquals(m.toString(), d.decode(code));
+    }
+
+    @Test
+    public void keepsLeastHeightAndWeightedPathLength() throws Exception{
+        Random r = new Random(3);
+        for (int limit : new int[]{VTree.DEFAULT_RESCALE_LIMIT, 600}){
+            VTree v = VTree.forBytes(1, "output.txt");
+            v.setRescaleLimit(limit);
+            for (int i = 0; i < 5000; i++){
+                //Skewed, so there are blocks of many sizes
+                v.add(String.valueOf((char)(r.nextInt(1 + r.nextInt(64)) * r.nextInt(4))));
+                assertArrayEquals(leastPathLengths(v), pathLengths(v));
+            }
+        }
+    }
+
+    /**
+     * Measures a tree
+     * @param v the tree
+     * @return the sum of the weighted path lengths of its leaves and its height
+     */
+    public static long[] pathLengths(VTree v){
+        long weighted = 0;
+        long height = 0;
+        LinkedList<Node> nodes = new LinkedList<>();
+        LinkedList<Integer> depths = new LinkedList<>();
+        nodes.add(v.head);
+        depths.add(0);
+        while (!nodes.isEmpty()){
+            Node n = nodes.removeFirst();
+            int depth = depths.removeFirst();
+            if (n.isLeaf()){
+                weighted += (long)n.getWeight() * depth;
+                height = Math.max(height, depth);
+            }else {
+                nodes.add(n.left);
+                nodes.add(n.right);
+                depths.add(depth + 1);
+                depths.add(depth + 1);
+            }
+        }
+        return new long[]{weighted, height};
+    }
+
+    /**
+     * Measures the reference for a tree: the Huffman tree for the weights of its leaves, the NYT node included,
+     * built with two queues taking the leaf on a tie, which has the least height of any Huffman tree
+     * @param v the tree
+     * @return the sum of the weighted path lengths of the leaves of the reference and its height
+     */
+    public static long[] leastPathLengths(VTree v){
+        List<Integer> leaves = new ArrayList<>();
+        for (Node n : v.getList()){
+            if (n.isLeaf()) leaves.add(n.getWeight());
+        }
+        Collections.sort(leaves);
+        int count = leaves.size();
+        if (count == 1) return new long[]{0, 0};
+        long[] w = new long[2 * count - 1];
+        int[] parent = new int[2 * count - 1];
+        for (int i = 0; i < count; i++){
+            w[i] = leaves.get(i);
+        }
+        int nextLeaf = 0;
+        int nextInternal = count;
+        for (int made = count; made < 2 * count - 1; made++){
+            for (int k = 0; k < 2; k++){
+                int taken = (nextLeaf < count && (nextInternal == made || w[nextLeaf] <= w[nextInternal]))
+                        ? nextLeaf++ : nextInternal++;
+                parent[taken] = made;
+                w[made] += w[taken];
+            }
+        }
+        int[] depth = new int[2 * count - 1];
+        long weighted = 0;
+        long height = 0;
+        for (int k = 2 * count - 3; k >= 0; k--){
+            depth[k] = depth[parent[k]] + 1;
+        }
+        for (int k = 0; k < count; k++){
+            weighted += w[k] * depth[k];
+            height = Math.max(height, depth[k]);
+        }
+        return new long[]{weighted, height};
+    }
+
+    @Test
+    public void rescalingBoundsCodeLength() throws Exception{
+        //Symbol i appears fib(i) times, which makes the deepest tree its weights allow
+        ByteArrayOutputStream fibonacci = new ByteArrayOutputStream();
+        int a = 1, b = 1;
+        for (int i = 0; i < 24; i++){
+            for (int j = 0; j < a; j++) fibonacci.write(i);
+            int c = a + b; a = b; b = c;
+        }
+        byte[] m = fibonacci.toByteArray();
+        CountingMetrics unbounded = new CountingMetrics();
+        VTree u = VTree.forBytes(1, "output.txt");
+        u.setMetrics(unbounded);
+        u.encode(m);
+        CountingMetrics bounded = new CountingMetrics();
+        VTree e = VTree.forBytes(1, "output.txt");
+        e.setRescaleLimit(1 << 10);
+        e.setMetrics(bounded);
+        byte[] code = e.encode(m);
+        assertTrue(bounded.getRescales() > 0);
+        assertTrue(unbounded.getMaxDepth() > 20);
+        assertTrue(bounded.getMaxDepth() <= 16);
+        VTree d = VTree.forBytes(1, "output.txt");
+        d.setRescaleLimit(1 << 10);
+        assertArrayEquals(m, d.decode(code));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rescaleLimitMustExceedAlphabet() throws Exception{
+        VTree.forBytes(1, "output.txt").setRescaleLimit(511);
+    }
+
     @Test
     public void testEncodeAndDecode() throws Exception{
         String m1 = "Hello World!";
@@ -308,5 +485,60 @@ public class VTreeTest{
         assertEquals(d1,m1);
     }
 
+    @Test
+    public void testEncodeAndDecodeForLargeAlphabet() throws Exception{
+        //117^3 symbols is past the dense index, so this uses the hashed symbol index
+        String m1 = "The quick brown fox jumps over the lazy dog. The quick brown fox!";
+        t = new VTree(3);
+        String e1 = t.encode(m1);
+        t = new VTree(3);
+        String d1 = t.decode(e1);
+        assertEquals(m1 + "\n", d1);
+    }
+
+    @Test
+    public void encodedFileIsPackedBits() throws Exception{
+        File in = File.createTempFile("vtree", ".txt");
+        File out = File.createTempFile("vtree", ".enc");
+        File back = File.createTempFile("vtree", ".dec");
+        String m = "A far more complex String\nWell I should hope so!";
+        FileWriter fw = new FileWriter(in);
+        fw.write(m);
+        fw.close();
+
+        new VTree(1, out.getPath()).encode(new FileReader(in));
+        String bits = new VTree().encode(m);
+        //Every eight code bits take one byte, plus the trailer
+        assertEquals((bits.length() + 7) / 8 + 1, out.length());
+
+        new VTree(1, back.getPath()).decode(new FileInputStream(out));
+        BufferedReader br = new BufferedReader(new FileReader(back));
+        assertEquals("A far more complex String", br.readLine());
+        assertEquals("Well I should hope so!", br.readLine());
+        br.close();
+        in.delete();
+        out.delete();
+        back.delete();
+    }
 
+    @Test
+    public void byteModeIsBinarySafe() throws Exception{
+        //Every byte value, including line endings and bytes above 127
+        byte[] m = new byte[4096];
+        Random r = new Random(8);
+        for (int i = 0; i < m.length; i++){
+            m[i] = (byte)((i < 256) ? i : r.nextInt(16) * r.nextInt(16));
+        }
+        for (int symbols = 1; symbols <= 2; symbols++){
+            byte[] e = VTree.forBytes(symbols, "output.txt").encode(m);
+            assertArrayEquals(m, VTree.forBytes(symbols, "output.txt").decode(e));
+        }
+        byte[] empty = VTree.forBytes(1, "output.txt").encode(new byte[0]);
+        assertArrayEquals(new byte[0], VTree.forBytes(1, "output.txt").decode(empty));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void textModeRejectsBytesOutsideAlphabet() throws Exception{
+        t.encode(new byte[]{(byte)0xC3, (byte)0xA9});
+    }
 }
@@ -0,0 +1,237 @@
+package userInterface;
+
+import exceptions.InvalidSequenceException;
+import vitterImpl.EngineType;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Encodes or decodes many files in one process, several at once on a bounded pool of workers, so that a directory
+ * does not need a JVM started for every file in it.
+ *
+ * The input is a directory, whose files are all coded, or a glob such as "logs/**.txt", whose matching files are
+ * coded. Each file is coded as the command line would code it on its own, and written to the same path relative to
+ * the output directory as it had relative to the input directory (or the directory the glob starts from). A file
+ * that fails is reported and does not stop the others.
+ */
+public class BatchCoder {
+    private final boolean encode;
+    private final int symbols;
+    private final boolean bytes;
+    private EngineType engine = EngineType.VITTER;
+    private boolean fixed = false;
+    private boolean context = false;
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The totals of a batch
+     */
+    public static final class Summary {
+        //The number of files coded, and the bytes read and written for them
+        public final int files;
+        public final long inputBytes;
+        public final long outputBytes;
+        public final long nanos;
+        //The relative paths of the files that could not be coded, in order, each with why it could not be
+        public final Map<String, String> failed;
+
+        Summary(int files, long inputBytes, long outputBytes, long nanos, Map<String, String> failed){
+            this.files = files;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+            this.nanos = nanos;
+            this.failed = failed;
+        }
+
+        /**
+         * @return the size of the output relative to the input
+         */
+        public double ratio(){
+            return (inputBytes == 0) ? 1 : outputBytes / (double)inputBytes;
+        }
+
+        /**
+         * @return the input coded per second, in MB
+         */
+        public double throughput(){
+            return (nanos == 0) ? 0 : inputBytes / 1e6 / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString(){
+            return String.format("%d files, %d bytes in, %d bytes out, ratio %.3f, %.2f s, %.1f MB/s", files,
+                    inputBytes, outputBytes, ratio(), nanos / 1e9, throughput())
+                    + (failed.isEmpty() ? "" : ", " + failed.size() + " failed");
+        }
+    }
+
+    /**
+     * Creates a batch, coding as the command line does (see userInterface)
+     * @param encode true to encode, false to decode
+     * @param symbols the number of characters in each symbol, ignored when decoding containers
+     * @param bytes true for byte mode, ignored when decoding containers
+     */
+    public BatchCoder(boolean encode, int symbols, boolean bytes){
+        this.encode = encode;
+        this.symbols = symbols;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Sets the engine files are encoded with, Vitter's by default. Containers record it, so it only matters to
+     * decoding for files that are not containers.
+     * @param engine the engine
+     */
+    public void setEngine(EngineType engine){
+        this.engine = engine;
+    }
+
+    /**
+     * Sets whether files are encoded with a static code (see StaticCoder) rather than as containers, false by
+     * default. Decoding recognises either.
+     * @param fixed true for a static code
+     */
+    public void setStatic(boolean fixed){
+        this.fixed = fixed;
+    }
+
+    /**
+     * Sets whether files are encoded with an order-1 context model (see ContextCoder) rather than as containers,
+     * false by default. Decoding recognises either.
+     * @param context true for a context model
+     */
+    public void setContext(boolean context){
+        this.context = context;
+    }
+
+    /**
+     * Sets the most files coded at once, the number of processors by default
+     * @param workers the number of files
+     */
+    public void setWorkers(int workers){
+        if (workers < 1) throw new IllegalArgumentException("At least one worker is needed");
+        this.workers = workers;
+    }
+
+    /**
+     * Codes every file of a directory or glob
+     * @param input a directory, or a glob of files
+     * @param output the directory the coded files are written under, which is created if need be
+     * @return the totals
+     * @throws IOException when the input can not be listed
+     */
+    public Summary code(String input, String output) throws IOException{
+        Path base = base(input);
+        List<Path> files = list(base, input);
+        Path out = Paths.get(output);
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<Long>> tasks = new ArrayList<>();
+        try {
+            for (Path file : files){
+                tasks.add(pool.submit(() -> codeFile(file, out.resolve(base.relativize(file).toString()))));
+            }
+            long inputBytes = 0;
+            long outputBytes = 0;
+            int coded = 0;
+            Map<String, String> failed = new LinkedHashMap<>();
+            for (int i = 0; i < files.size(); i++){
+                try {
+                    outputBytes += tasks.get(i).get();
+                    inputBytes += Files.size(files.get(i));
+                    coded++;
+                }catch (ExecutionException e){
+                    failed.put(base.relativize(files.get(i)).toString(), reason(e.getCause()));
+                }catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while coding " + files.get(i));
+                }
+            }
+            return new Summary(coded, inputBytes, outputBytes, System.nanoTime() - start,
+                    Collections.unmodifiableMap(failed));
+        }finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Codes one file
+     * @return the size of the file written
+     */
+    private long codeFile(Path input, Path output) throws IOException, InvalidSequenceException{
+        Path parent = output.getParent();
+        if (parent != null) Files.createDirectories(parent);
+        userInterface.codeFile(encode, input.toString(), output.toString(), symbols, bytes, engine, fixed,
+                context);
+        return Files.size(output);
+    }
+
+    /**
+     * @return why a file could not be coded: the message of what was thrown, or its name if it has no message
+     */
+    private static String reason(Throwable cause){
+        return (cause.getMessage() == null) ? cause.getClass().getSimpleName() : cause.getMessage();
+    }
+
+    /**
+     * @return the directory a directory or glob of files is relative to: the directory itself, or the part of the
+     * glob before the first pattern
+     */
+    private static Path base(String input){
+        Path path = Paths.get(input);
+        if (Files.isDirectory(path)) return path;
+        int wild = firstWildcard(input);
+        if (wild < 0){
+            //A single file
+            Path parent = path.getParent();
+            return (parent == null) ? Paths.get("") : parent;
+        }
+        int slash = input.lastIndexOf('/', wild);
+        return Paths.get(slash < 0 ? "" : input.substring(0, slash + 1));
+    }
+
+    /**
+     * @return the regular files of a directory or glob, in order of path
+     */
+    private static List<Path> list(Path base, String input) throws IOException{
+        Path path = Paths.get(input);
+        PathMatcher matcher;
+        if (Files.isDirectory(path)){
+            matcher = p -> true;
+        }else if (firstWildcard(input) < 0){
+            return Files.isRegularFile(path) ? Collections.singletonList(path) : Collections.emptyList();
+        }else {
+            String pattern = input.substring(input.lastIndexOf('/', firstWildcard(input)) + 1);
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        }
+        try (Stream<Path> walk = Files.walk(base)){
+            return walk.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(base.relativize(p)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int firstWildcard(String s){
+        for (int i = 0; i < s.length(); i++){
+            if ("*?[{".indexOf(s.charAt(i)) >= 0) return i;
+        }
+        return -1;
+    }
+}
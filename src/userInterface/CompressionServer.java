@@ -0,0 +1,279 @@
+package userInterface;
+
+import exceptions.InvalidCommandException;
+import exceptions.InvalidSequenceException;
+import vitterImpl.CoderEngine;
+import vitterImpl.EngineType;
+import vitterImpl.TreePool;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A long-running server that encodes and decodes streams for clients on the same machine, so that one JVM, started
+ * and warmed up once, serves every request rather than one being started per file.
+ *
+ * The protocol is plain TCP. A client sends one request line in the format of the command line, without the files:
+ * "<e(ncode) or d(ecode)> [number of symbols] [b(ytes)] [vitter or fgk]" followed by '\n'. It then sends the stream
+ * and shuts down its side of the connection.
+ *
+ * The reply is a series of frames, each a status byte, the length of its payload as a big-endian int and then the
+ * payload, after the last of which the server closes the connection:
+ * DATA frames carry the encoding or decoding, a single stream in the format of VTree.encode(InputStream,
+ * OutputStream), in order and as it is produced.
+ * An OK frame, with an empty payload, ends a reply that succeeded. Until it arrives, the result may not be complete.
+ * An ERROR frame ends a reply that failed, eg: the request line is invalid or the stream is not a valid encoding. Its
+ * payload is a message in ASCII, and any DATA frames before it are only part of a result so should be discarded.
+ * Failures that are not the fault of the input are logged.
+ *
+ * Each connection is handled on a thread of its own with a tree of its own, taken from a TreePool for its alphabet
+ * and engine.
+ * Virtual threads are used where the JVM has them (Java 21 on), as the threads mostly wait on the network.
+ */
+public class CompressionServer implements Closeable {
+    //The port listened on unless set otherwise
+    public static final int DEFAULT_PORT = 4747;
+    //The status bytes of the frames of a reply, see the protocol above
+    public static final byte DATA = 'D';
+    public static final byte OK = 'O';
+    public static final byte ERROR = 'E';
+    //The longest request line accepted
+    private static final int MAX_REQUEST = 64;
+    //The most bytes of a result held back before they are sent as a frame
+    private static final int FRAME_SIZE = 1 << 16;
+    private static final Logger LOG = Logger.getLogger(CompressionServer.class.getName());
+
+    private final ServerSocket socket;
+    private final ExecutorService connections = newConnectionExecutor();
+    //A pool of trees for every alphabet and engine requested so far, by the number of symbols, mode and engine
+    private final Map<String, TreePool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a server listening on the loopback address. Connections are not accepted until serve is called.
+     * @param port the port, or 0 for any free port (see getPort)
+     * @throws IOException when the port can not be listened on
+     */
+    public CompressionServer(int port) throws IOException{
+        socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * @return the port being listened on
+     */
+    public int getPort(){
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed, handling each on a thread of its own
+     * @throws IOException when a connection can not be accepted for any reason other than the server being closed
+     */
+    public void serve() throws IOException{
+        while (!socket.isClosed()){
+            Socket client;
+            try {
+                client = socket.accept();
+            }catch (SocketException e){
+                if (socket.isClosed()) return;
+                throw e;
+            }
+            connections.execute(() -> handle(client));
+        }
+    }
+
+    /**
+     * Stops accepting connections. Those already accepted are finished.
+     * @throws IOException when the socket can not be closed
+     */
+    @Override
+    public void close() throws IOException{
+        socket.close();
+        connections.shutdown();
+    }
+
+    /**
+     * Serves one connection, see the protocol above
+     */
+    private void handle(Socket client){
+        try (Socket s = client){
+            InputStream in = s.getInputStream();
+            FrameOutputStream out = new FrameOutputStream(s.getOutputStream());
+            boolean encode;
+            TreePool pool;
+            try {
+                StringTokenizer st = new StringTokenizer(readRequest(in));
+                encode = userInterface.decipherPurpose(nextToken(st));
+                int symbols = userInterface.decipherSymbols(nextToken(st));
+                boolean bytes = false;
+                EngineType engine = EngineType.VITTER;
+                for (String option = nextToken(st); option != null; option = nextToken(st)){
+                    if (userInterface.decipherEngine(option) != null) engine = userInterface.decipherEngine(option);
+                    else bytes = userInterface.decipherMode(option);
+                }
+                pool = pool(symbols, bytes, engine);
+            }catch (InvalidCommandException | IllegalArgumentException e){
+                //NumberFormatException is an IllegalArgumentException, as is an alphabet no tree can be built for
+                out.error("Please maintain format: <e(ncode) or d(ecode)> [number of symbols] [b(ytes)] " +
+                        "[vitter or fgk]");
+                return;
+            }
+            CoderEngine tree = pool.acquire();
+            try {
+                if (encode){
+                    tree.encode(in, out);
+                }else {
+                    tree.decode(in, out);
+                }
+                out.ok();
+            }catch (InvalidSequenceException e){
+                out.error("Not a valid encoding for this alphabet");
+            }catch (IllegalArgumentException e){
+                //eg: a character outside the alphabet
+                out.error(String.valueOf(e.getMessage()));
+            }catch (RuntimeException | Error e){
+                //A fault of the server rather than of the input
+                LOG.log(Level.SEVERE, "Coding failed for a client", e);
+                out.error("The server failed to code the stream");
+                if (e instanceof Error) throw (Error)e;
+            }finally {
+                pool.release(tree);
+            }
+        }catch (IOException e){
+            //The client has gone, there is no one to tell
+        }
+    }
+
+    /**
+     * @return the pool of trees for an alphabet and engine, made the first time it is requested
+     * @throws IllegalArgumentException when no tree can be built for the alphabet
+     */
+    private TreePool pool(int symbols, boolean bytes, EngineType engine){
+        String key = symbols + (bytes ? "b" : "") + engine;
+        TreePool pool = pools.get(key);
+        if (pool == null){
+            //Fails now, before the pool is kept, if no tree can be built
+            userInterface.createEngine(symbols, bytes, engine);
+            pool = pools.computeIfAbsent(key,
+                    k -> new TreePool(() -> userInterface.createEngine(symbols, bytes, engine)));
+        }
+        return pool;
+    }
+
+    /**
+     * Reads the request line a byte at a time, so none of the stream after it is consumed
+     */
+    private static String readRequest(InputStream in) throws IOException, InvalidCommandException{
+        StringBuilder sb = new StringBuilder();
+        int c = in.read();
+        while (c != '\n'){
+            if (c < 0 || sb.length() == MAX_REQUEST) throw new InvalidCommandException();
+            sb.append((char)c);
+            c = in.read();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sends what is written to it as DATA frames, ending the reply with ok or error
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[FRAME_SIZE];
+        private int count = 0;
+
+        FrameOutputStream(OutputStream out){
+            this.out = new DataOutputStream(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException{
+            if (count == buffer.length) sendData();
+            buffer[count++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException{
+            while (len > 0){
+                if (count == buffer.length) sendData();
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * Sends what has been written so far, so a client is not kept waiting for a full frame
+         */
+        @Override
+        public void flush() throws IOException{
+            sendData();
+            out.flush();
+        }
+
+        /**
+         * Ends a reply that succeeded
+         */
+        void ok() throws IOException{
+            sendData();
+            send(OK, new byte[0]);
+        }
+
+        /**
+         * Ends a reply that failed. Anything not yet sent is dropped, as the client discards the result anyway.
+         * @param message why it failed
+         */
+        void error(String message) throws IOException{
+            count = 0;
+            send(ERROR, message.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private void sendData() throws IOException{
+            if (count == 0) return;
+            out.writeByte(DATA);
+            out.writeInt(count);
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+
+        private void send(byte status, byte[] payload) throws IOException{
+            out.writeByte(status);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.flush();
+        }
+    }
+
+    private static String nextToken(StringTokenizer st){
+        return st.hasMoreTokens() ? st.nextToken() : null;
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task if this JVM has them, otherwise one that starts (and
+     * reuses) a platform thread per task
+     */
+    static ExecutorService newConnectionExecutor(){
+        try {
+            //Looked up reflectively, as the build targets a release without virtual threads
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }catch (ReflectiveOperationException e){
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
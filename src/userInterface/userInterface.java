@@ -1,11 +1,22 @@
 package userInterface;
 
+import exceptions.AlphabetException;
 import exceptions.InvalidSequenceException;
+import vitterImpl.CoderEngine;
+import vitterImpl.ContainerDecoder;
+import vitterImpl.ContainerEncoder;
+import vitterImpl.ContextCoder;
+import vitterImpl.EngineType;
+import vitterImpl.StaticCoder;
 import vitterImpl.VTree;
 import exceptions.InvalidCommandException;
 
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 /**
@@ -22,45 +33,150 @@ public class userInterface {
         boolean encode;
         String input, output;
         int symbols;
+        boolean bytes = false;
+        EngineType engine = EngineType.VITTER;
+        boolean fixed = false;
+        boolean context = false;
         try{
-            encode = decipherPurpose(st.nextToken());
-            input = decipherInput(st.nextToken());
-            output = decipherOutput(st.nextToken());
-            symbols = decipherSymbols(st.nextToken());
-            VTree t = createVTree(output, symbols);
-            if (encode){
-                encode(t, input);
-            }else{
-                decode(t, input);
+            String purpose = nextToken(st);
+            if (decipherResume(purpose)){
+                //The checkpoint says how the file was being encoded
+                input = decipherInput(nextToken(st));
+                output = decipherOutput(nextToken(st));
+                if (!new File(ContainerEncoder.checkpointFile(output)).exists()){
+                    System.out.println("There is no checkpoint to resume " + output + " from.");
+                    return;
+                }
+                ContainerEncoder.fromCheckpoint(output).resume(input, output);
+                return;
             }
+            if (decipherBatch(purpose)){
+                //The rest is a command for every file
+                encode = decipherPurpose(nextToken(st));
+                input = decipherInput(nextToken(st));
+                output = decipherInput(nextToken(st));
+                symbols = decipherSymbols(nextToken(st));
+                for (String option = nextToken(st); option != null; option = nextToken(st)){
+                    if (decipherEngine(option) != null) engine = decipherEngine(option);
+                    else if (decipherStatic(option)) fixed = true;
+                    else if (decipherContext(option)) context = true;
+                    else bytes = decipherMode(option);
+                }
+                if (fixed && context) throw new InvalidCommandException();
+                BatchCoder b = new BatchCoder(encode, symbols, bytes);
+                b.setEngine(engine);
+                b.setStatic(fixed);
+                b.setContext(context);
+                batch(b, input, output);
+                return;
+            }
+            if (decipherServe(purpose)){
+                serve(decipherPort(nextToken(st)));
+                return;
+            }
+            encode = decipherPurpose(purpose);
+            input = decipherInput(nextToken(st));
+            output = decipherOutput(nextToken(st));
+            symbols = decipherSymbols(nextToken(st));
+            for (String option = nextToken(st); option != null; option = nextToken(st)){
+                if (decipherEngine(option) != null) engine = decipherEngine(option);
+                else if (decipherStatic(option)) fixed = true;
+                else if (decipherContext(option)) context = true;
+                else bytes = decipherMode(option);
+            }
+            if (fixed && context) throw new InvalidCommandException();
+            codeFile(encode, input, output, symbols, bytes, engine, fixed, context);
         }catch (InvalidCommandException e){
             System.out.println("Invalid command!");
             System.out.println("Please maintain format: <e(ncode) or d(ecode)> <file input> <file output> " +
-                    "<number of symbols>");
-            System.out.println("Example: e input.txt output.txt");
+                    "<number of symbols> [b(ytes)] [vitter or fgk] [static or context]");
+            System.out.println("Example: e input.txt output.txt 1");
+            System.out.println("Add b to treat the input as raw bytes, for binary files");
+            System.out.println("Add fgk to code with the FGK algorithm rather than Vitter's");
+            System.out.println("Add static to encode a file at rest with a fixed code, which is much faster");
+            System.out.println("Add context to code each symbol by the one before it, which compresses text better");
+            System.out.println("Files are encoded as containers, which decode without the number of symbols, b " +
+                    "or the algorithm");
+            System.out.println("If encoding is stopped, finish it with: r <file input> <file output>");
+            System.out.println("To serve requests over TCP on this machine instead: s [port]");
+            System.out.println("To code many files at once: batch <e or d> <directory or quoted glob> " +
+                    "<output directory> [number of symbols] [b(ytes)] [vitter or fgk] [static or context]");
         }catch(IOException e){
             System.out.println("Error reading or writing to file. Ensure file is not being accessed and you have " +
                     "permission to write or read it (as appropriate)");
         }catch(InvalidSequenceException e){
-            System.out.println("That code was not valid for these parameters. ");
+            System.out.println("That code (or checkpoint) was not valid for these parameters. ");
         }catch (NumberFormatException e){
-            System.out.println("The number of symbols you requested was not valid.");
+            System.out.println("The number of symbols (or port) you requested was not valid.");
+        }catch (AlphabetException e){
+            System.out.println("The input can not be encoded with this alphabet (" + e.getMessage() + "). " +
+                    "Try byte mode for binary files, or fewer symbols.");
+        }catch (IllegalArgumentException e){
+            System.out.println("That request could not be carried out (" + e.getMessage() + ").");
         }
     }
 
-    private static VTree createVTree(String output, int symbols) throws IOException{
-        return new VTree(symbols, output);
+    /**
+     * Encodes or decodes one file, as a command does
+     * @param fixed true to encode with a static code (see StaticCoder) rather than as a container
+     * @param context true to encode with an order-1 context model (see ContextCoder) rather than as a container
+     */
+    static void codeFile(boolean encode, String input, String output, int symbols, boolean bytes,
+                         EngineType engine, boolean fixed, boolean context)
+            throws IOException, InvalidSequenceException{
+        if (encode && fixed){
+            (bytes ? StaticCoder.forBytes(symbols) : new StaticCoder(symbols)).encode(input, output);
+        }else if (encode && context){
+            createContextCoder(symbols, bytes, engine).encode(input, output);
+        }else if (encode){
+            encode(createContainerEncoder(symbols, bytes, engine), input, output);
+        }else if (StaticCoder.isStatic(input)){
+            //As with containers, the header says how it was encoded
+            StaticCoder.decode(input, output);
+        }else if (ContextCoder.isContext(input)){
+            ContextCoder.decode(input, output);
+        }else if (ContainerDecoder.isContainer(input)){
+            //The container says how it was encoded
+            new ContainerDecoder().decode(input, output);
+        }else{
+            decode(createEngine(symbols, bytes, engine), input, output);
+        }
     }
 
-    private static void encode(VTree t, String input) throws IOException{
-        t.encode(new FileReader(input));
+    static CoderEngine createEngine(int symbols, boolean bytes, EngineType engine){
+        if (bytes) return engine.newTree(symbols, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS);
+        return engine.newTree(symbols, VTree.TEXT_START_SYMBOL, VTree.TEXT_ALPHA_CHARACTERS);
     }
 
-    private static void decode(VTree t,String input) throws IOException, InvalidSequenceException{
-        t.decode(new FileReader(input));
+    private static ContextCoder createContextCoder(int symbols, boolean bytes, EngineType engine){
+        if (bytes) return new ContextCoder(symbols, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS, engine);
+        return new ContextCoder(symbols, VTree.TEXT_START_SYMBOL, VTree.TEXT_ALPHA_CHARACTERS, engine);
     }
 
-    private static boolean decipherPurpose(String s) throws InvalidCommandException{
+    private static ContainerEncoder createContainerEncoder(int symbols, boolean bytes, EngineType engine){
+        ContainerEncoder e = bytes ? ContainerEncoder.forBytes(symbols) : new ContainerEncoder(symbols);
+        e.setEngine(engine);
+        //Long encodings can be resumed if they are stopped
+        e.setCheckpoints(true);
+        return e;
+    }
+
+    private static void encode(ContainerEncoder e, String input, String output) throws IOException{
+        //Read as raw bytes, so line endings survive
+        e.encode(input, output);
+    }
+
+    private static void decode(CoderEngine t,String input, String output) throws IOException, InvalidSequenceException{
+        //Large inputs are memory-mapped rather than read through a buffer
+        try (FileChannel in = FileChannel.open(Paths.get(input), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(output), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            t.decode(in, out);
+        }
+    }
+
+    static boolean decipherPurpose(String s) throws InvalidCommandException{
+        if (s == null) throw new InvalidCommandException();
         switch (s) {
             case "e":
             case "-e":
@@ -74,7 +190,101 @@ public class userInterface {
         }
     }
 
-    private static int decipherSymbols(String s) throws NumberFormatException{
+    private static boolean decipherResume(String s){
+        if (s == null) return false;
+        switch (s) {
+            case "r":
+            case "-r":
+            case "resume":
+            case "-resume": return true;
+            default: return false;
+        }
+    }
+
+    private static void serve(int port) throws IOException{
+        try (CompressionServer server = new CompressionServer(port)){
+            System.out.println("Serving on localhost:" + server.getPort());
+            server.serve();
+        }
+    }
+
+    private static void batch(BatchCoder b, String input, String output) throws IOException{
+        BatchCoder.Summary summary = b.code(input, output);
+        for (Map.Entry<String, String> failed : summary.failed.entrySet()){
+            System.out.println("Could not code " + failed.getKey() + ": " + failed.getValue());
+        }
+        System.out.println(summary);
+    }
+
+    /**
+     * @return the engine an option names, or null if it names none
+     */
+    static EngineType decipherEngine(String s){
+        if (s == null) return null;
+        switch (s) {
+            case "vitter":
+            case "-vitter": return EngineType.VITTER;
+            case "fgk":
+            case "-fgk": return EngineType.FGK;
+            default: return null;
+        }
+    }
+
+    private static boolean decipherStatic(String s){
+        if (s == null) return false;
+        switch (s) {
+            case "static":
+            case "-static": return true;
+            default: return false;
+        }
+    }
+
+    private static boolean decipherContext(String s){
+        if (s == null) return false;
+        switch (s) {
+            case "context":
+            case "-context": return true;
+            default: return false;
+        }
+    }
+
+    private static boolean decipherBatch(String s){
+        if (s == null) return false;
+        switch (s) {
+            case "batch":
+            case "-batch": return true;
+            default: return false;
+        }
+    }
+
+    private static boolean decipherServe(String s){
+        if (s == null) return false;
+        switch (s) {
+            case "s":
+            case "-s":
+            case "serve":
+            case "-serve": return true;
+            default: return false;
+        }
+    }
+
+    private static int decipherPort(String s) throws NumberFormatException{
+        if (s == null) return CompressionServer.DEFAULT_PORT;
+        return Integer.parseInt(s);
+    }
+
+    static boolean decipherMode(String s) throws InvalidCommandException{
+        if (s == null) return false;
+        switch (s) {
+            case "b":
+            case "-b":
+            case "bytes":
+            case "-bytes": return true;
+            default: throw new InvalidCommandException();
+        }
+    }
+
+    static int decipherSymbols(String s) throws NumberFormatException{
         if (s == null) return 1;
         return Integer.decode(s);
     }
@@ -89,6 +299,10 @@ public class userInterface {
         return s;
     }
 
+    private static String nextToken(StringTokenizer st){
+        return st.hasMoreTokens() ? st.nextToken() : null;
+    }
+
     private static String convertArrayToString(String[] args){
         StringBuilder sb = new StringBuilder();
         for (String s: args){
@@ -0,0 +1,144 @@
+package vitterImpl;
+
+import exceptions.AlphabetException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The symbols of an alphabet and their numbers. A symbol is numSymbols characters from the alphaCharacters
+ * characters starting at startSymbol, and its number is those characters (less startSymbol) read as a number in base
+ * alphaCharacters, first character first. Shared by the coders, which only differ in how they code the numbers.
+ */
+final class Alphabet {
+    //Marks an alphabet whose characters are not a power of two in number, see characterBits
+    private static final int NONE = -1;
+
+    //The number of characters in each symbol
+    final int numSymbols;
+    //The first character, position 0 in the alphabet
+    final char startSymbol;
+    //The number of characters, which are contiguous from startSymbol
+    final int alphaCharacters;
+    //The number of distinct symbols, alphaCharacters^numSymbols
+    final int size;
+    //placeValues[i] is alphaCharacters^i, the value of the i-th character from the end of a symbol
+    private final int[] placeValues;
+    //The bits per character when alphaCharacters is a power of two (eg: byte mode), so symbols can be split with
+    //shifts rather than division, otherwise NONE
+    private final int characterBits;
+
+    /**
+     * @param numSymbols the number of characters in each symbol
+     * @param startSymbol the first character in the alphabet
+     * @param alphaCharacters the number of characters in the alphabet
+     * @throws AlphabetException when there are no symbols, or too many to number with an int
+     */
+    Alphabet(int numSymbols, char startSymbol, int alphaCharacters){
+        if (numSymbols < 1 || alphaCharacters < 1){
+            throw new AlphabetException("An alphabet needs at least one character and symbol");
+        }
+        this.numSymbols = numSymbols;
+        this.startSymbol = startSymbol;
+        this.alphaCharacters = alphaCharacters;
+        placeValues = new int[numSymbols];
+        long symbols = 1;
+        for (int i = 0; i < numSymbols; i++){
+            placeValues[i] = (int)symbols;
+            symbols *= alphaCharacters;
+            if (symbols > Integer.MAX_VALUE){
+                throw new AlphabetException("An alphabet of " + alphaCharacters + "^" + numSymbols +
+                        " symbols is not supported");
+            }
+        }
+        size = (int)symbols;
+        characterBits = (Integer.bitCount(alphaCharacters) == 1) ? Integer.numberOfTrailingZeros(alphaCharacters)
+                : NONE;
+    }
+
+    /**
+     * Extends a partly built symbol number by another character
+     * @param number the symbol number of the characters so far
+     * @param c the next character
+     * @return the symbol number of the characters so far followed by c
+     * @throws AlphabetException when c is not in the alphabet
+     */
+    int extendSymbolNumber(int number, char c){
+        int position = c - startSymbol;
+        if (position < 0 || position >= alphaCharacters){
+            throw new AlphabetException("Character " + (int)c + " is not in the alphabet");
+        }
+        if (characterBits != NONE) return (number << characterBits) | position;
+        return number * alphaCharacters + position;
+    }
+
+    /**
+     * Detects the number in the alphabet that this symbol is
+     * @param s the string representation of the symbol
+     * @return the position in the alphabet
+     */
+    int detectSymbolNumber(String s){
+        int number = 0;
+        for (int i = 0; i < s.length(); i++){
+            number = extendSymbolNumber(number, s.charAt(i));
+        }
+        return number;
+    }
+
+    /**
+     * Detects the symbol from a given symbol number
+     * @param value the symbol number
+     * @return the symbol detected
+     */
+    String detectSymbol(int value){
+        StringBuilder sb = new StringBuilder(numSymbols);
+        appendSymbol(value, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the characters of a symbol, the counterpart of detectSymbolNumber
+     * @param value the symbol number
+     * @param sb where the characters are appended
+     */
+    void appendSymbol(int value, StringBuilder sb){
+        for (int i = numSymbols - 1; i >= 0; i--){
+            sb.append((char)(startSymbol + characterAt(value, i)));
+        }
+    }
+
+    /**
+     * Writes the characters of a symbol as bytes, the counterpart of extendSymbolNumber
+     * @param s the symbol number
+     * @param b the array to write to, with room for numSymbols bytes
+     * @param off where the first character goes
+     */
+    void writeSymbol(int s, byte[] b, int off){
+        for (int i = numSymbols - 1; i >= 0; i--){
+            b[off++] = (byte)(startSymbol + characterAt(s, i));
+        }
+    }
+
+    /**
+     * Writes the characters of a symbol to a buffer, one byte each, moving its position past them
+     * @param s the symbol number
+     * @param b the buffer, with room for numSymbols bytes
+     */
+    void writeSymbol(int s, ByteBuffer b){
+        for (int i = numSymbols - 1; i >= 0; i--){
+            b.put((byte)(startSymbol + characterAt(s, i)));
+        }
+    }
+
+    /**
+     * Finds one character of a symbol, its digit when the symbol number is written in base alphaCharacters
+     * @param value the symbol number
+     * @param i the place of the character, counting from 0 at the end of the symbol
+     * @return the position in the alphabet of the character
+     */
+    private int characterAt(int value, int i){
+        if (characterBits != NONE){
+            return (value >>> (i * characterBits)) & (alphaCharacters - 1);
+        }
+        return (value / placeValues[i]) % alphaCharacters;
+    }
+}
@@ -0,0 +1,264 @@
+package vitterImpl;
+
+import exceptions.InvalidSequenceException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A canonical Huffman code, for StaticCoder. Only the code length of each symbol is needed to rebuild it: the codes of
+ * each length are consecutive numbers given out in order of symbol number, shorter codes first (as in DEFLATE).
+ *
+ * Encoding finds a symbol's code with one lookup in the symbol index. Decoding looks up the next TABLE_BITS bits in a
+ * table, which gives the symbol outright for codes that short; longer codes are finished a bit at a time by comparing
+ * against the first code of each length.
+ */
+class CanonicalCode {
+    //The longest code given out. Counts are halved until the code for them fits.
+    static final int MAX_CODE_LENGTH = 30;
+    //The bits decoded per table lookup
+    static final int TABLE_BITS = 11;
+
+    //Every symbol with a code, in order of symbol number, and the length and value of its code
+    private final int[] symbols;
+    private final int[] lengths;
+    private final int[] codes;
+    //Finds a symbol's position in the arrays above
+    private final SymbolIndex index;
+    //Positions in symbols, in order of code: by length and then by symbol number
+    private final int[] sorted;
+    //For each length, the first code of that length, the number of such codes and where they start in sorted
+    private final int[] firstCode = new int[MAX_CODE_LENGTH + 2];
+    private final int[] lengthCount = new int[MAX_CODE_LENGTH + 2];
+    private final int[] firstSorted = new int[MAX_CODE_LENGTH + 2];
+    private final int maxLength;
+    //Maps the next TABLE_BITS bits to one more than the position of the symbol whose code they start with, or to 0
+    //when that code is longer than TABLE_BITS
+    private final int[] table = new int[1 << TABLE_BITS];
+
+    /**
+     * Builds the code for some code lengths
+     * @param symbols the symbols, in increasing order
+     * @param lengths the length of each symbol's code, from 1 to MAX_CODE_LENGTH
+     * @param alphaSize the number of symbols in the alphabet
+     * @throws IllegalArgumentException when the lengths do not make a complete prefix code
+     */
+    CanonicalCode(int[] symbols, int[] lengths, int alphaSize){
+        this.symbols = symbols;
+        this.lengths = lengths;
+        this.codes = new int[symbols.length];
+        this.index = new SymbolIndex(alphaSize);
+        int longest = 0;
+        long kraft = 0;
+        for (int i = 0; i < symbols.length; i++){
+            if (lengths[i] < 1 || lengths[i] > MAX_CODE_LENGTH || symbols[i] < 0 || symbols[i] >= alphaSize
+                    || (i > 0 && symbols[i] <= symbols[i - 1])){
+                throw new IllegalArgumentException("Not a code");
+            }
+            lengthCount[lengths[i]]++;
+            longest = Math.max(longest, lengths[i]);
+            kraft += 1L << (MAX_CODE_LENGTH - lengths[i]);
+            index.put(symbols[i], i);
+        }
+        //A lone symbol has the code 0, leaving 1 unused; anything else must use every code
+        boolean complete = kraft == 1L << MAX_CODE_LENGTH || (symbols.length == 1 && lengths[0] == 1);
+        if (symbols.length > 0 && !complete) throw new IllegalArgumentException("Not a complete prefix code");
+        maxLength = longest;
+
+        int[] next = new int[MAX_CODE_LENGTH + 2];
+        int code = 0;
+        int position = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++){
+            code = (code + lengthCount[length - 1]) << 1;
+            firstCode[length] = next[length] = code;
+            firstSorted[length] = position;
+            position += lengthCount[length];
+        }
+        sorted = new int[symbols.length];
+        for (int i = 0; i < symbols.length; i++){
+            int length = lengths[i];
+            codes[i] = next[length]++;
+            sorted[firstSorted[length] + codes[i] - firstCode[length]] = i;
+            if (length <= TABLE_BITS){
+                int start = codes[i] << (TABLE_BITS - length);
+                Arrays.fill(table, start, start + (1 << (TABLE_BITS - length)), i + 1);
+            }
+        }
+    }
+
+    /**
+     * Builds a Huffman code for some counts, halving them (rounding up) until no code is longer than
+     * MAX_CODE_LENGTH
+     * @param symbols the symbols, in increasing order
+     * @param counts the number of times each was seen, above 0
+     * @param alphaSize the number of symbols in the alphabet
+     * @return the code
+     */
+    static CanonicalCode forCounts(int[] symbols, long[] counts, int alphaSize){
+        int n = symbols.length;
+        if (n > 1 << MAX_CODE_LENGTH) throw new IllegalArgumentException("Too many distinct symbols");
+        //Counts are scaled to fit 31 bits, so they can be sorted packed with their position
+        long max = 1;
+        for (long c : counts){
+            max = Math.max(max, c);
+        }
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(max) - 31);
+        long[] weights = new long[n];
+        for (int i = 0; i < n; i++){
+            weights[i] = Math.max(1, counts[i] >>> shift);
+        }
+        int[] lengths = huffmanLengths(weights);
+        while (max(lengths) > MAX_CODE_LENGTH){
+            for (int i = 0; i < n; i++){
+                weights[i] = (weights[i] + 1) / 2;
+            }
+            lengths = huffmanLengths(weights);
+        }
+        return new CanonicalCode(symbols, lengths, alphaSize);
+    }
+
+    /**
+     * Finds the code lengths of a Huffman code by the two queue method: one queue holds the leaves in order of weight
+     * and the other the internal nodes in the order they are made, which is also in order of weight.
+     * @param weights the weight of each leaf, below 2^31
+     * @return the length of each leaf's code, 1 for a lone leaf
+     */
+    private static int[] huffmanLengths(long[] weights){
+        int n = weights.length;
+        int[] lengths = new int[n];
+        if (n == 1) lengths[0] = 1;
+        if (n <= 1) return lengths;
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++){
+            order[i] = (weights[i] << 31) | i;
+        }
+        Arrays.sort(order);
+        //Nodes 0 to n - 1 are the leaves in order of weight, the internal nodes follow
+        long[] w = new long[2 * n - 1];
+        int[] parent = new int[2 * n - 1];
+        for (int i = 0; i < n; i++){
+            w[i] = order[i] >>> 31;
+        }
+        int nextLeaf = 0;
+        int nextInternal = n;
+        for (int made = n; made < 2 * n - 1; made++){
+            for (int k = 0; k < 2; k++){
+                int taken = (nextLeaf < n && (nextInternal == made || w[nextLeaf] <= w[nextInternal]))
+                        ? nextLeaf++ : nextInternal++;
+                parent[taken] = made;
+                w[made] += w[taken];
+            }
+        }
+        //Parents are made after their children, so depths can be filled in from the root down
+        int[] depth = new int[2 * n - 1];
+        for (int k = 2 * n - 3; k >= 0; k--){
+            depth[k] = depth[parent[k]] + 1;
+        }
+        for (int k = 0; k < n; k++){
+            lengths[(int)(order[k] & 0x7FFFFFFF)] = depth[k];
+        }
+        return lengths;
+    }
+
+    private static int max(int[] a){
+        int m = 0;
+        for (int x : a){
+            m = Math.max(m, x);
+        }
+        return m;
+    }
+
+    /**
+     * @return the number of symbols with a code
+     */
+    int size(){
+        return symbols.length;
+    }
+
+    /**
+     * @param symbol a symbol number
+     * @return its position, for code and length, or -1 if it has no code
+     */
+    int position(int symbol){
+        return index.get(symbol);
+    }
+
+    int code(int position){
+        return codes[position];
+    }
+
+    int length(int position){
+        return lengths[position];
+    }
+
+    int symbol(int position){
+        return symbols[position];
+    }
+
+    /**
+     * Decodes the symbol at the top of a window of bits
+     * @param window the next bits, most significant first, followed by zeros
+     * @return the position of the symbol, for symbol and length, or -1 if the bits do not start with a code
+     */
+    int decode(long window){
+        int entry = table[(int)(window >>> (64 - TABLE_BITS))];
+        if (entry != 0) return entry - 1;
+        int code = 0;
+        for (int length = 1; length <= maxLength; length++){
+            code = (code << 1) | (int)((window >>> (64 - length)) & 1);
+            if (code - firstCode[length] < lengthCount[length]){
+                return sorted[firstSorted[length] + code - firstCode[length]];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the number of symbols and then, in order of symbol number, the amount each symbol's number exceeds the
+     * last one's as a variable length integer and the length of its code as a byte
+     * @param out where the code is written
+     * @throws IOException when the code can not be written
+     */
+    void write(DataOutput out) throws IOException{
+        out.writeInt(symbols.length);
+        int previous = 0;
+        for (int i = 0; i < symbols.length; i++){
+            TreeSnapshot.writeVarInt(out, symbols[i] - previous);
+            out.writeByte(lengths[i]);
+            previous = symbols[i];
+        }
+    }
+
+    /**
+     * Reads a code written by write
+     * @param in where the code is read from
+     * @param alphaSize the number of symbols in the alphabet
+     * @return the code
+     * @throws IOException when the code can not be read
+     * @throws InvalidSequenceException when the input is not a code
+     */
+    static CanonicalCode read(DataInput in, int alphaSize) throws IOException, InvalidSequenceException{
+        int count = in.readInt();
+        if (count < 0 || count > alphaSize) throw new InvalidSequenceException();
+        int[] symbols = new int[Math.min(count, 1 << 16)];
+        int[] lengths = new int[symbols.length];
+        long symbol = 0;
+        for (int i = 0; i < count; i++){
+            if (i == symbols.length){
+                symbols = Arrays.copyOf(symbols, Math.min(count, 2 * i));
+                lengths = Arrays.copyOf(lengths, symbols.length);
+            }
+            symbol += TreeSnapshot.readVarInt(in);
+            if (symbol >= alphaSize) throw new InvalidSequenceException();
+            symbols[i] = (int)symbol;
+            lengths[i] = in.readUnsignedByte();
+        }
+        try {
+            return new CanonicalCode(symbols, lengths, alphaSize);
+        }catch (IllegalArgumentException e){
+            throw new InvalidSequenceException();
+        }
+    }
+}
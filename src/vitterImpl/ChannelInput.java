@@ -0,0 +1,76 @@
+package vitterImpl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads a channel to its end a piece at a time, for the channel methods of VTree.
+ *
+ * A large file is memory-mapped, so its bytes are coded where the operating system has cached them rather than being
+ * copied into a buffer first. Any other channel is read into one direct buffer, which the channel can fill without
+ * the temporary copy it makes when given a heap buffer.
+ */
+class ChannelInput {
+    //The most bytes handed over at once, which bounds the output a coder gathers before writing it
+    static final int PIECE_SIZE = 1 << 16;
+    //Files with fewer bytes than this left are read rather than mapped, as mapping has a cost of its own
+    static final long MAP_THRESHOLD = 1 << 20;
+    //The most bytes mapped at once, well within the 2GB a buffer can address
+    static final long MAP_SEGMENT = 1L << 30;
+
+    private final ReadableByteChannel in;
+    //The file being mapped, and where its mapping has got to, or null if the channel is read
+    private FileChannel file;
+    private long position;
+    private long end;
+    private ByteBuffer buffer;
+
+    ChannelInput(ReadableByteChannel in) throws IOException{
+        this.in = in;
+        if (in instanceof FileChannel){
+            FileChannel f = (FileChannel)in;
+            position = f.position();
+            end = f.size();
+            if (end - position >= MAP_THRESHOLD) file = f;
+        }
+        if (file == null) buffer = ByteBuffer.allocateDirect(PIECE_SIZE);
+    }
+
+    /**
+     * @return the next piece of input, at most PIECE_SIZE bytes between its position and limit, or null at the end
+     * of the channel. It is only valid until the next call.
+     * @throws IOException when the channel can not be read
+     */
+    ByteBuffer next() throws IOException{
+        if (file != null) return nextMapped();
+        buffer.clear();
+        int read;
+        do {
+            read = in.read(buffer);
+        }while (read == 0 && buffer.hasRemaining());
+        if (read < 0 && buffer.position() == 0) return null;
+        buffer.flip();
+        return buffer;
+    }
+
+    private ByteBuffer nextMapped() throws IOException{
+        if (buffer == null || !buffer.hasRemaining()){
+            if (position == end){
+                //Leave the file where reading it would have
+                file.position(end);
+                return null;
+            }
+            long length = Math.min(MAP_SEGMENT, end - position);
+            MappedByteBuffer segment = file.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+            buffer = segment;
+        }
+        ByteBuffer piece = buffer.slice();
+        piece.limit(Math.min(piece.capacity(), PIECE_SIZE));
+        buffer.position(buffer.position() + piece.limit());
+        return piece;
+    }
+}
@@ -0,0 +1,85 @@
+package vitterImpl;
+
+import exceptions.InvalidSequenceException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * How far ContainerEncoder has got with a file, so that an encoding which is stopped can be resumed.
+ *
+ * Every block of a container is encoded with a new tree, so between blocks there is no tree state or part written
+ * byte to keep: the blocks done and their sizes, which the header holds, are enough to carry on and write exactly
+ * the container an uninterrupted run would have. The length and modification time of the input are kept to check it
+ * has not changed. Written big-endian, a checkpoint is: the magic number, the input's length and modification time,
+ * the number of blocks done and then the container's header, with the sizes of blocks not yet done being 0.
+ */
+class Checkpoint {
+    //"VTK1", marks a file as a checkpoint
+    private static final int MAGIC = 0x56544B31;
+
+    final long inputLength;
+    final long inputModified;
+    final int blocksDone;
+    final ContainerHeader header;
+
+    Checkpoint(long inputLength, long inputModified, int blocksDone, ContainerHeader header){
+        this.inputLength = inputLength;
+        this.inputModified = inputModified;
+        this.blocksDone = blocksDone;
+        this.header = header;
+    }
+
+    /**
+     * Writes the checkpoint, replacing any earlier one in a single step so a crash never leaves half of one
+     * @param path the file
+     * @throws IOException when the file can not be written
+     */
+    void write(String path) throws IOException{
+        String temporary = path + ".tmp";
+        try (FileOutputStream file = new FileOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(file)){
+            out.writeInt(MAGIC);
+            out.writeLong(inputLength);
+            out.writeLong(inputModified);
+            out.writeInt(blocksDone);
+            header.write(out);
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(Paths.get(temporary), Paths.get(path), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint written by write
+     * @param path the file
+     * @return the checkpoint
+     * @throws IOException when the file can not be read
+     * @throws InvalidSequenceException when the file is not a checkpoint
+     */
+    static Checkpoint read(String path) throws IOException, InvalidSequenceException{
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))){
+            if (in.readInt() != MAGIC) throw new InvalidSequenceException();
+            long inputLength = in.readLong();
+            long inputModified = in.readLong();
+            int blocksDone = in.readInt();
+            //The header follows the magic number, the input's length and modification time and the blocks done
+            ContainerHeader header = ContainerHeader.read(in, Files.size(Paths.get(path)) - (4 + 8 + 8 + 4));
+            if (header.length != inputLength || blocksDone < 0 || blocksDone > header.blockSizes.length){
+                throw new InvalidSequenceException();
+            }
+            return new Checkpoint(inputLength, inputModified, blocksDone, header);
+        }catch (EOFException e){
+            //Cut short
+            throw new InvalidSequenceException();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package vitterImpl;
+
+import exceptions.InvalidSequenceException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An adaptive coder: a model of the symbols seen so far that encodes each symbol as it goes, and a decoder that
+ * builds the same model from the code. Callers that only code (eg: containers, pools and the server) depend on this
+ * rather than on a particular tree; EngineType makes each kind. The buffer and channel methods copy through the
+ * array and stream methods unless an engine does better.
+ *
+ * An encoding can only be decoded by an engine of the same type and alphabet, in the state the encoder started in.
+ * Engines are not thread-safe.
+ */
+public interface CoderEngine {
+    /**
+     * Generates the encoding for some bytes, each byte being one character
+     * @param data the bytes to be encoded
+     * @return the encoding as packed bits, which decode(byte[]) reverses
+     */
+    byte[] encode(byte[] data);
+
+    /**
+     * Decodes packed bits produced by encode(byte[])
+     * @param code the encoding
+     * @return the bytes decoded
+     * @throws InvalidSequenceException when the code is not valid for this engine
+     */
+    byte[] decode(byte[] code) throws InvalidSequenceException;
+
+    /**
+     * Generates the encoding for the remaining bytes of a buffer, see encode(byte[]). The buffer's position is moved
+     * to its limit.
+     * @param data the bytes to be encoded, which may be a slice of a mapped file
+     * @return the encoding as packed bits, which decode(byte[]) reverses
+     */
+    default byte[] encode(ByteBuffer data){
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return encode(bytes);
+    }
+
+    /**
+     * Decodes the remaining bytes of a buffer, packed bits produced by encode(byte[]). The buffer's position is
+     * moved to its limit.
+     * @param code the encoding, which may be a slice of a mapped file
+     * @return the bytes decoded
+     * @throws InvalidSequenceException when the code is not valid for this engine
+     */
+    default byte[] decode(ByteBuffer code) throws InvalidSequenceException{
+        byte[] bytes = new byte[code.remaining()];
+        code.get(bytes);
+        return decode(bytes);
+    }
+
+    /**
+     * Generates the encoding for a stream, each byte being one character, and writes it as packed bits to another.
+     * Neither stream is closed.
+     * @param in the stream to be encoded, read to its end
+     * @param out the stream the encoding is written to
+     * @throws IOException when there is difficulty reading or writing either stream
+     */
+    void encode(InputStream in, OutputStream out) throws IOException;
+
+    /**
+     * Decodes a stream of packed bits and writes the characters to another. Neither stream is closed.
+     * @param in the stream with the encoding, read to its end
+     * @param out the stream the decoding is written to
+     * @throws IOException when there is difficulty reading or writing either stream
+     * @throws InvalidSequenceException when the code is not valid for this engine
+     */
+    void decode(InputStream in, OutputStream out) throws IOException, InvalidSequenceException;
+
+    /**
+     * Generates the encoding for a channel, as encode(InputStream, OutputStream). Neither channel is closed.
+     * @param in the channel to be encoded, read to its end
+     * @param out the channel the encoding is written to
+     * @throws IOException when there is difficulty reading or writing either channel
+     */
+    default void encode(ReadableByteChannel in, WritableByteChannel out) throws IOException{
+        encode(Channels.newInputStream(in), Channels.newOutputStream(out));
+    }
+
+    /**
+     * Decodes a channel of packed bits, as decode(InputStream, OutputStream). Neither channel is closed.
+     * @param in the channel with the encoding, read to its end
+     * @param out the channel the decoding is written to
+     * @throws IOException when there is difficulty reading or writing either channel
+     * @throws InvalidSequenceException when the code is not valid for this engine
+     */
+    default void decode(ReadableByteChannel in, WritableByteChannel out) throws IOException, InvalidSequenceException{
+        decode(Channels.newInputStream(in), Channels.newOutputStream(out));
+    }
+
+    /**
+     * Updates the model for one symbol without encoding it
+     * @param s the symbol, NUM_SYMBOLS characters of the alphabet
+     */
+    void add(String s);
+
+    /**
+     * Returns the engine to the state it was created in, so it can code another message
+     */
+    void reset();
+}
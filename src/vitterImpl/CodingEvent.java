@@ -0,0 +1,59 @@
+package vitterImpl;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for one call to encode or decode, eg: one buffer of a stream. Only created when a
+ * recording enables it, so that streams stay free of allocation otherwise. Enable it with
+ * -XX:StartFlightRecording and a settings file that turns on vitterImpl.Coding, or jdk.jfr.Recording.enable.
+ */
+@Name("vitterImpl.Coding")
+@Label("Adaptive Huffman Coding")
+@Category("Adaptive Huffman")
+@Description("A call to encode or decode with a VTree")
+class CodingEvent extends Event {
+    @Label("Encoding")
+    @Description("True when encoding, false when decoding")
+    boolean encoding;
+
+    @Label("Symbols")
+    long symbols;
+
+    @Label("Code Size")
+    @Description("The bits of code written or read")
+    @DataAmount(DataAmount.BITS)
+    long bits;
+
+    private static final EventType TYPE = EventType.getEventType(CodingEvent.class);
+
+    /**
+     * @return a begun event, or null when no recording wants one
+     */
+    static CodingEvent start(){
+        if (!TYPE.isEnabled()) return null;
+        CodingEvent event = new CodingEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends an event from start, and commits it if it is within the recording's threshold
+     * @param event the event, which may be null
+     */
+    static void end(CodingEvent event, boolean encoding, long symbols, long bits){
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()){
+            event.encoding = encoding;
+            event.symbols = symbols;
+            event.bits = bits;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package vitterImpl;
+
+import exceptions.InvalidSequenceException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Decodes a container written by ContainerEncoder, decoding its blocks in parallel on a ForkJoinPool. Everything
+ * needed to decode, such as the alphabet and NUM_SYMBOLS, is read from the header.
+ */
+public class ContainerDecoder {
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private TreeMetrics metrics = TreeMetrics.NONE;
+
+    /**
+     * Sets the pool blocks are decoded on, the common pool by default
+     * @param pool the pool
+     */
+    public void setPool(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    /**
+     * Sets where the measurements of every block's tree are sent, see VTree.setMetrics
+     * @param metrics the metrics, shared by blocks decoded in parallel so must be thread-safe
+     */
+    public void setMetrics(TreeMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * Checks whether a file starts like a container
+     * @param path the file
+     * @return true if the file is a container rather than a single stream
+     * @throws IOException when the file can not be read
+     */
+    public static boolean isContainer(String path) throws IOException{
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))){
+            return in.readInt() == ContainerHeader.MAGIC;
+        }catch (EOFException e){
+            return false;
+        }
+    }
+
+    /**
+     * Decodes a container held in memory
+     * @param container the container
+     * @return the bytes decoded
+     * @throws InvalidSequenceException when the container is not valid
+     */
+    public byte[] decode(byte[] container) throws InvalidSequenceException{
+        ContainerHeader header;
+        try {
+            header = ContainerHeader.read(new DataInputStream(new ByteArrayInputStream(container)),
+                    container.length);
+        }catch (IOException e){
+            //Only the end of the array can stop it being read
+            throw new InvalidSequenceException();
+        }
+        long[] offsets = header.blockOffsets();
+        if (offsets[offsets.length - 1] != container.length || header.length > Integer.MAX_VALUE - 8){
+            throw new InvalidSequenceException();
+        }
+
+        List<ForkJoinTask<byte[]>> tasks = new ArrayList<>();
+        for (int i = 0; i < header.blockSizes.length; i++){
+            int block = i;
+            ByteBuffer code = ByteBuffer.wrap(container, (int)offsets[block], header.blockSizes[block]);
+            tasks.add(pool.submit(() -> header.decodeBlock(block, code, metrics)));
+        }
+        byte[] decoded = new byte[(int)header.length];
+        for (int i = 0; i < tasks.size(); i++){
+            System.arraycopy(join(tasks.get(i)), 0, decoded, i * header.blockSize, header.decodedSize(i));
+        }
+        return decoded;
+    }
+
+    /**
+     * Decodes a container in a file. Blocks are decoded straight from a memory-mapping of the file, and only a few
+     * blocks per thread of the pool are held in memory at once.
+     * @param input the container
+     * @param output the file the decoding is written to
+     * @throws IOException when there is difficulty reading or writing the files
+     * @throws InvalidSequenceException when the container is not valid
+     */
+    public void decode(String input, String output) throws IOException, InvalidSequenceException{
+        int window = 2 * pool.getParallelism();
+        try (FileChannel in = FileChannel.open(Paths.get(input), StandardOpenOption.READ);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(output))){
+            ContainerHeader header = ContainerHeader.read(new DataInputStream(Channels.newInputStream(in)), in.size());
+            long[] offsets = header.blockOffsets();
+            if (offsets[offsets.length - 1] != in.size()) throw new InvalidSequenceException();
+            for (int first = 0; first < header.blockSizes.length; first += window){
+                List<ForkJoinTask<byte[]>> tasks = new ArrayList<>();
+                for (int i = first; i < Math.min(first + window, header.blockSizes.length); i++){
+                    int block = i;
+                    ByteBuffer code = in.map(FileChannel.MapMode.READ_ONLY, offsets[i], header.blockSizes[i]);
+                    tasks.add(pool.submit(() -> header.decodeBlock(block, code, metrics)));
+                }
+                for (int i = 0; i < tasks.size(); i++){
+                    out.write(join(tasks.get(i)), 0, header.decodedSize(first + i));
+                }
+            }
+        }catch (EOFException e){
+            throw new InvalidSequenceException();
+        }
+    }
+
+    /**
+     * Waits for a block, passing on the InvalidSequenceException it failed with, if any
+     */
+    static byte[] join(ForkJoinTask<byte[]> task) throws InvalidSequenceException{
+        try {
+            return task.join();
+        }catch (RuntimeException e){
+            for (Throwable cause = e; cause != null; cause = cause.getCause()){
+                if (cause instanceof InvalidSequenceException) throw (InvalidSequenceException)cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package vitterImpl;
+
+import exceptions.InvalidSequenceException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Encodes input as a container (see ContainerHeader): the input is split into blocks which are encoded in parallel,
+ * each with a tree of its own, on a ForkJoinPool.
+ *
+ * Splitting costs a little compression, as every block starts with an empty tree, so blocks should be large. The
+ * header records the alphabet and the original length, so ContainerDecoder needs nothing but the container and the
+ * last block is never padded on decoding.
+ */
+public class ContainerEncoder {
+    //The number of characters in each block unless set otherwise
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    //Added to the name of a container being written to name its checkpoint
+    public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    private final int NUM_SYMBOLS;
+    private final char START_SYMBOL;
+    private final int ALPHA_CHARACTERS;
+    private final Alphabet alphabet;
+    private int blockSize;
+    private int rescaleLimit = VTree.DEFAULT_RESCALE_LIMIT;
+    private EngineType engine = EngineType.VITTER;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private TreeMetrics metrics = TreeMetrics.NONE;
+    private boolean checkpoints = false;
+
+    /**
+     * Creates an encoder for an alphabet, see VTree
+     * @param NUM_SYMBOLS the number of characters in each symbol
+     * @param START_SYMBOL the first character in the alphabet
+     * @param ALPHA_CHARACTERS the number of characters in the alphabet
+     */
+    public ContainerEncoder(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS){
+        this.NUM_SYMBOLS = NUM_SYMBOLS;
+        this.START_SYMBOL = START_SYMBOL;
+        this.ALPHA_CHARACTERS = ALPHA_CHARACTERS;
+        //Fails now, rather than in every block, if no tree can be built for the alphabet
+        this.alphabet = new Alphabet(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS);
+        setBlockSize(DEFAULT_BLOCK_SIZE);
+    }
+
+    public ContainerEncoder(int NUM_SYMBOLS){
+        this(NUM_SYMBOLS, VTree.TEXT_START_SYMBOL, VTree.TEXT_ALPHA_CHARACTERS);
+    }
+
+    /**
+     * Creates an encoder for byte mode, see VTree.forBytes
+     * @param NUM_SYMBOLS the number of bytes in each symbol
+     * @return the encoder
+     */
+    public static ContainerEncoder forBytes(int NUM_SYMBOLS){
+        return new ContainerEncoder(NUM_SYMBOLS, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS);
+    }
+
+    /**
+     * Sets the number of characters in each block, rounded down to a whole number of symbols
+     * @param blockSize the number of characters, at least NUM_SYMBOLS
+     */
+    public void setBlockSize(int blockSize){
+        if (blockSize < NUM_SYMBOLS) throw new IllegalArgumentException("Blocks must hold at least one symbol");
+        this.blockSize = blockSize - blockSize % NUM_SYMBOLS;
+    }
+
+    /**
+     * Sets the rescale limit of every block's tree, see VTree.setRescaleLimit. It is recorded in the header, so
+     * decoding needs nothing more.
+     * @param limit the limit
+     */
+    public void setRescaleLimit(int limit){
+        //Fails now, rather than in every block, if the limit is too low for the alphabet
+        if (limit < VTree.minRescaleLimit(alphabet)){
+            throw new IllegalArgumentException("The rescale limit must be at least twice the size of the alphabet");
+        }
+        this.rescaleLimit = limit;
+    }
+
+    /**
+     * Sets the kind of tree every block is encoded with, Vitter's by default. It is recorded in the header, so
+     * decoding needs nothing more.
+     * @param engine the engine
+     */
+    public void setEngine(EngineType engine){
+        this.engine = engine;
+    }
+
+    /**
+     * Sets whether encoding a file writes checkpoints: after every few blocks a side file (see checkpointFile) records
+     * how far the encoding has got, so that resume can finish it if it is stopped. The side file is deleted once the
+     * container is complete. Off by default.
+     * @param checkpoints true to write checkpoints
+     */
+    public void setCheckpoints(boolean checkpoints){
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Sets the pool blocks are encoded on, the common pool by default
+     * @param pool the pool
+     */
+    public void setPool(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    /**
+     * Sets where the measurements of every block's tree are sent, see VTree.setMetrics
+     * @param metrics the metrics, shared by blocks encoded in parallel so must be thread-safe
+     */
+    public void setMetrics(TreeMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * Encodes some bytes as a container, each byte being one character
+     * @param data the bytes to be encoded
+     * @return the container
+     */
+    public byte[] encode(byte[] data){
+        ContainerHeader header = newHeader(data.length);
+        List<ForkJoinTask<byte[]>> tasks = new ArrayList<>();
+        for (int i = 0; i < header.blockSizes.length; i++){
+            int offset = i * blockSize;
+            int length = header.decodedSize(i);
+            tasks.add(pool.submit(() -> encodeBlock(header, ByteBuffer.wrap(data, offset, length), metrics)));
+        }
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream(data.length / 2 + 16);
+        for (int i = 0; i < tasks.size(); i++){
+            byte[] block = tasks.get(i).join();
+            header.blockSizes[i] = block.length;
+            blocks.write(block, 0, block.length);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(header.size() + blocks.size());
+        try {
+            header.write(new DataOutputStream(bytes));
+            blocks.writeTo(bytes);
+        }catch (IOException e){
+            //In memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes a file as a container. Only a few blocks per thread of the pool are held in memory at once.
+     * @param input the file to be encoded
+     * @param output the file the container is written to
+     * @throws IOException when there is difficulty reading or writing the files
+     */
+    public void encode(String input, String output) throws IOException{
+        File file = new File(input);
+        Checkpoint start = new Checkpoint(file.length(), file.lastModified(), 0, newHeader(file.length()));
+        encode(input, output, start);
+    }
+
+    /**
+     * Finishes an encoding of a file that was stopped part way, from the last checkpoint it wrote (see
+     * setCheckpoints). The container is the same as one written without stopping.
+     * @param input the file being encoded, which must not have changed
+     * @param output the file the container was being written to
+     * @throws IOException when there is difficulty reading or writing the files, or the input has changed
+     * @throws InvalidSequenceException when the checkpoint is missing parts or is not for this encoder
+     */
+    public void resume(String input, String output) throws IOException, InvalidSequenceException{
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile(output));
+        ContainerHeader header = checkpoint.header;
+        if (header.numSymbols != NUM_SYMBOLS || header.startSymbol != START_SYMBOL
+                || header.alphaCharacters != ALPHA_CHARACTERS || header.rescaleLimit != rescaleLimit
+                || header.engine != engine || header.blockSize != blockSize){
+            throw new InvalidSequenceException();
+        }
+        File file = new File(input);
+        if (file.length() != checkpoint.inputLength || file.lastModified() != checkpoint.inputModified){
+            throw new IOException("The input has changed since the checkpoint");
+        }
+        encode(input, output, checkpoint);
+    }
+
+    /**
+     * Creates an encoder with the settings of an encoding that was stopped part way, ready to resume it
+     * @param output the file the container was being written to
+     * @return the encoder, which writes checkpoints
+     * @throws IOException when the checkpoint can not be read
+     * @throws InvalidSequenceException when the checkpoint is missing parts
+     */
+    public static ContainerEncoder fromCheckpoint(String output) throws IOException, InvalidSequenceException{
+        ContainerHeader header = Checkpoint.read(checkpointFile(output)).header;
+        ContainerEncoder e = new ContainerEncoder(header.numSymbols, header.startSymbol, header.alphaCharacters);
+        e.setBlockSize(header.blockSize);
+        e.setRescaleLimit(header.rescaleLimit);
+        e.setEngine(header.engine);
+        e.setCheckpoints(true);
+        return e;
+    }
+
+    /**
+     * @param output a container being written
+     * @return the file its checkpoints are written to
+     */
+    public static String checkpointFile(String output){
+        return output + CHECKPOINT_SUFFIX;
+    }
+
+    /**
+     * Encodes a file from a checkpoint, which for a new encoding is one with no blocks done
+     */
+    private void encode(String input, String output, Checkpoint start) throws IOException{
+        ContainerHeader header = start.header;
+        int window = 2 * pool.getParallelism();
+        try (FileChannel in = FileChannel.open(Paths.get(input), StandardOpenOption.READ);
+             RandomAccessFile out = new RandomAccessFile(output, "rw")){
+            if (in.size() < header.length) throw new EOFException("The input is shorter than expected");
+            //The block sizes are only known once the blocks have been encoded, so the header is written last
+            long position = header.blockOffsets()[start.blocksDone];
+            out.setLength(position);
+            out.seek(position);
+            for (int first = start.blocksDone; first < header.blockSizes.length; first += window){
+                List<ForkJoinTask<byte[]>> tasks = new ArrayList<>();
+                for (int i = first; i < Math.min(first + window, header.blockSizes.length); i++){
+                    //Blocks are encoded straight from a memory-mapping of the input
+                    ByteBuffer block = in.map(FileChannel.MapMode.READ_ONLY, (long)i * blockSize,
+                            header.decodedSize(i));
+                    tasks.add(pool.submit(() -> encodeBlock(header, block, metrics)));
+                }
+                for (int i = 0; i < tasks.size(); i++){
+                    byte[] block = tasks.get(i).join();
+                    header.blockSizes[first + i] = block.length;
+                    out.write(block);
+                }
+                if (checkpoints){
+                    //The blocks must be on disk before a checkpoint says they are done
+                    out.getFD().sync();
+                    new Checkpoint(start.inputLength, start.inputModified, first + tasks.size(), header)
+                            .write(checkpointFile(output));
+                }
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(header.size());
+            header.write(new DataOutputStream(bytes));
+            out.seek(0);
+            out.write(bytes.toByteArray());
+        }
+        Files.deleteIfExists(Paths.get(checkpointFile(output)));
+    }
+
+    private ContainerHeader newHeader(long length){
+        return new ContainerHeader(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, rescaleLimit, engine, length,
+                blockSize);
+    }
+
+    /**
+     * Encodes one block with a new tree. A last block short of a whole symbol is padded with the first character of
+     * the alphabet, which decoding removes.
+     * @param data the block's characters, between the buffer's position and limit
+     */
+    private static byte[] encodeBlock(ContainerHeader header, ByteBuffer data, TreeMetrics metrics){
+        int length = data.remaining();
+        int padded = length + (header.numSymbols - length % header.numSymbols) % header.numSymbols;
+        if (padded != length){
+            byte[] block = new byte[padded];
+            data.get(block, 0, length);
+            Arrays.fill(block, length, padded, (byte)header.startSymbol);
+            return header.newTree(metrics).encode(block);
+        }
+        return header.newTree(metrics).encode(data);
+    }
+}
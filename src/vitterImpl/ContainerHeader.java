@@ -0,0 +1,159 @@
+package vitterImpl;
+
+import exceptions.AlphabetException;
+import exceptions.InvalidSequenceException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The header of a container, which says everything needed to decode it.
+ *
+ * A container is the input split into blocks of blockSize characters (the last may be shorter), each encoded with a
+ * tree of its own so blocks can be encoded and decoded independently. The header, written big-endian, is:
+ * the magic number, NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, the rescale limit of the trees, the id of their
+ * EngineType, the original length, blockSize, the number of blocks and then the encoded size of every block. The
+ * encoded blocks follow in order, each being a stream as written by StreamEncoder.
+ */
+class ContainerHeader {
+    //"VTC3", marks a file as a container
+    static final int MAGIC = 0x56544333;
+    //The size of the header before the block sizes
+    static final int FIXED_SIZE = 4 + 4 + 2 + 4 + 4 + 4 + 8 + 4 + 4;
+
+    final int numSymbols;
+    final char startSymbol;
+    final int alphaCharacters;
+    final int rescaleLimit;
+    final EngineType engine;
+    final long length;
+    final int blockSize;
+    final int[] blockSizes;
+
+    ContainerHeader(int numSymbols, char startSymbol, int alphaCharacters, int rescaleLimit, EngineType engine,
+                    long length, int blockSize){
+        this.numSymbols = numSymbols;
+        this.startSymbol = startSymbol;
+        this.alphaCharacters = alphaCharacters;
+        this.rescaleLimit = rescaleLimit;
+        this.engine = engine;
+        this.length = length;
+        this.blockSize = blockSize;
+        long blocks = (length + blockSize - 1) / blockSize;
+        if (blocks > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many blocks, use a larger block size");
+        this.blockSizes = new int[(int)blocks];
+    }
+
+    /**
+     * @return the number of bytes the header takes
+     */
+    int size(){
+        return FIXED_SIZE + 4 * blockSizes.length;
+    }
+
+    /**
+     * @param i a block
+     * @return the number of characters block i decodes to
+     */
+    int decodedSize(int i){
+        return (int)Math.min(blockSize, length - (long)i * blockSize);
+    }
+
+    /**
+     * @param metrics where the tree's measurements are sent
+     * @return a new tree in the state every block starts in
+     */
+    CoderEngine newTree(TreeMetrics metrics){
+        VTree tree = engine.newTree(numSymbols, startSymbol, alphaCharacters, 0);
+        tree.setRescaleLimit(rescaleLimit);
+        tree.setMetrics(metrics);
+        return tree;
+    }
+
+    /**
+     * Decodes one block with a new tree, checking it decodes to the right number of characters
+     * @param block the block
+     * @param code its encoding, between the buffer's position and limit, which may be a slice of a mapped file
+     * @param metrics where the tree's measurements are sent
+     * @return the characters decoded, including any padding of the last symbol
+     * @throws InvalidSequenceException when the block is not valid
+     */
+    byte[] decodeBlock(int block, ByteBuffer code, TreeMetrics metrics) throws InvalidSequenceException{
+        int size = decodedSize(block);
+        int padded = size + (numSymbols - size % numSymbols) % numSymbols;
+        byte[] decoded = newTree(metrics).decode(code);
+        if (decoded.length != padded) throw new InvalidSequenceException();
+        return decoded;
+    }
+
+    /**
+     * @return the position of every block's encoding relative to the start of the container, and the container's
+     * size as a last entry
+     */
+    long[] blockOffsets(){
+        long[] offsets = new long[blockSizes.length + 1];
+        offsets[0] = size();
+        for (int i = 0; i < blockSizes.length; i++){
+            offsets[i + 1] = offsets[i] + blockSizes[i];
+        }
+        return offsets;
+    }
+
+    void write(DataOutput out) throws IOException{
+        out.writeInt(MAGIC);
+        out.writeInt(numSymbols);
+        out.writeChar(startSymbol);
+        out.writeInt(alphaCharacters);
+        out.writeInt(rescaleLimit);
+        out.writeInt(engine.id);
+        out.writeLong(length);
+        out.writeInt(blockSize);
+        out.writeInt(blockSizes.length);
+        for (int size : blockSizes){
+            out.writeInt(size);
+        }
+    }
+
+    /**
+     * Reads a header, checking it is one
+     * @param in where the header is read from
+     * @param available the most bytes the input can hold from the start of the header, which bounds the number of
+     * block sizes a header can claim to have
+     * @return the header
+     * @throws IOException when the header can not be read
+     * @throws InvalidSequenceException when the input is not a container
+     */
+    static ContainerHeader read(DataInput in, long available) throws IOException, InvalidSequenceException{
+        if (in.readInt() != MAGIC) throw new InvalidSequenceException();
+        int numSymbols = in.readInt();
+        char startSymbol = in.readChar();
+        int alphaCharacters = in.readInt();
+        int rescaleLimit = in.readInt();
+        EngineType engine = EngineType.forId(in.readInt());
+        long length = in.readLong();
+        int blockSize = in.readInt();
+        int blocks = in.readInt();
+        if (engine == null || numSymbols < 1 || alphaCharacters < 1 || length < 0 || blockSize < numSymbols
+                || blockSize % numSymbols != 0 || blocks != (length + blockSize - 1) / blockSize
+                || FIXED_SIZE + 4L * blocks > available){
+            throw new InvalidSequenceException();
+        }
+        try {
+            if (rescaleLimit < VTree.minRescaleLimit(new Alphabet(numSymbols, startSymbol, alphaCharacters))){
+                throw new InvalidSequenceException();
+            }
+        }catch (AlphabetException e){
+            //An alphabet no tree could have been built with
+            throw new InvalidSequenceException();
+        }
+        ContainerHeader header = new ContainerHeader(numSymbols, startSymbol, alphaCharacters, rescaleLimit, engine,
+                length, blockSize);
+        for (int i = 0; i < blocks; i++){
+            header.blockSizes[i] = in.readInt();
+            if (header.blockSizes[i] < 0) throw new InvalidSequenceException();
+        }
+        return header;
+    }
+}
@@ -0,0 +1,168 @@
+package vitterImpl;
+
+import exceptions.InvalidSequenceException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Random access to the decoding of a container, without decoding it from the start.
+ *
+ * Every block of a container starts with an empty tree, so a block can be decoded knowing only where its encoding
+ * starts. On opening, the header's block sizes are turned into an index of those positions; block i decodes to the
+ * characters from i * blockSize onwards. decodeRange then reads and decodes only the blocks overlapping the range
+ * asked for, in parallel.
+ *
+ * decodeRange may be called from several threads at once: blocks are read from the file at their own positions rather
+ * than by moving a shared file pointer. The pool and metrics should be set before the reader is shared.
+ */
+public class ContainerReader implements Closeable {
+    //Only one of these is in use, depending on where the container is held
+    private final FileChannel file;
+    private final byte[] bytes;
+    private final ContainerHeader header;
+    //offsets[i] is the position of block i's encoding, offsets[blocks] the size of the container
+    private final long[] offsets;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private TreeMetrics metrics = TreeMetrics.NONE;
+
+    /**
+     * Opens a container in a file
+     * @param path the file
+     * @throws IOException when the file can not be read
+     * @throws InvalidSequenceException when the file is not a container
+     */
+    public ContainerReader(String path) throws IOException, InvalidSequenceException{
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))){
+            header = ContainerHeader.read(in, Files.size(Paths.get(path)));
+        }catch (EOFException e){
+            throw new InvalidSequenceException();
+        }
+        offsets = header.blockOffsets();
+        file = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        bytes = null;
+        if (file.size() != offsets[offsets.length - 1]){
+            file.close();
+            throw new InvalidSequenceException();
+        }
+    }
+
+    /**
+     * Opens a container held in memory
+     * @param container the container, which is not copied
+     * @throws InvalidSequenceException when the array is not a container
+     */
+    public ContainerReader(byte[] container) throws InvalidSequenceException{
+        try {
+            header = ContainerHeader.read(new DataInputStream(new ByteArrayInputStream(container)), container.length);
+        }catch (IOException e){
+            //Only the end of the array can stop it being read
+            throw new InvalidSequenceException();
+        }
+        offsets = header.blockOffsets();
+        file = null;
+        bytes = container;
+        if (container.length != offsets[offsets.length - 1]) throw new InvalidSequenceException();
+    }
+
+    /**
+     * Sets the pool blocks are decoded on, the common pool by default
+     * @param pool the pool
+     */
+    public void setPool(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    /**
+     * Sets where the measurements of every block's tree are sent, see VTree.setMetrics
+     * @param metrics the metrics, shared by blocks decoded in parallel so must be thread-safe
+     */
+    public void setMetrics(TreeMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the number of characters the container decodes to
+     */
+    public long length(){
+        return header.length;
+    }
+
+    /**
+     * @return the number of characters in each block, the granularity of random access
+     */
+    public int getBlockSize(){
+        return header.blockSize;
+    }
+
+    /**
+     * Decodes part of the container
+     * @param from the position of the first character wanted
+     * @param to the position after the last character wanted
+     * @return the characters from "from" up to but not including "to"
+     * @throws IOException when the file can not be read
+     * @throws InvalidSequenceException when a block needed is not valid
+     */
+    public byte[] decodeRange(long from, long to) throws IOException, InvalidSequenceException{
+        if (from < 0 || to < from || to > header.length) throw new IndexOutOfBoundsException();
+        if (to - from > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Range too large for an array");
+        byte[] decoded = new byte[(int)(to - from)];
+        if (from == to) return decoded;
+        int first = (int)(from / header.blockSize);
+        int last = (int)((to - 1) / header.blockSize);
+
+        List<ForkJoinTask<byte[]>> tasks = new ArrayList<>();
+        for (int i = first; i <= last; i++){
+            int block = i;
+            if (bytes != null){
+                ByteBuffer code = ByteBuffer.wrap(bytes, (int)offsets[block], header.blockSizes[block]);
+                tasks.add(pool.submit(() -> header.decodeBlock(block, code, metrics)));
+            }else {
+                ByteBuffer code = ByteBuffer.wrap(read(block));
+                tasks.add(pool.submit(() -> header.decodeBlock(block, code, metrics)));
+            }
+        }
+        for (int i = first; i <= last; i++){
+            byte[] block = ContainerDecoder.join(tasks.get(i - first));
+            long start = (long)i * header.blockSize;
+            //The part of this block inside the range
+            int begin = (int)Math.max(0, from - start);
+            int end = (int)Math.min(header.decodedSize(i), to - start);
+            System.arraycopy(block, begin, decoded, (int)(start + begin - from), end - begin);
+        }
+        return decoded;
+    }
+
+    /**
+     * Reads the encoding of a block from the file. Positioned reads leave the channel's position alone, so blocks can
+     * be read by several threads at once.
+     */
+    private byte[] read(int block) throws IOException{
+        ByteBuffer code = ByteBuffer.allocate(header.blockSizes[block]);
+        long position = offsets[block];
+        while (code.hasRemaining()){
+            int n = file.read(code, position + code.position());
+            if (n < 0) throw new EOFException();
+        }
+        return code.array();
+    }
+
+    @Override
+    public void close() throws IOException{
+        if (file != null) file.close();
+    }
+}
@@ -0,0 +1,349 @@
+package vitterImpl;
+
+import bitStream.BitReader;
+import bitStream.BitWriter;
+import exceptions.InvalidSequenceException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An order-1 context model: each symbol is coded with an adaptive tree of its own for the symbol before it, so that
+ * what usually follows what (eg: 'u' after 'q', or a space after a full stop) costs few bits. Text compresses much
+ * better than with one tree for every symbol.
+ *
+ * A context's tree is created the first time the context is seen. When the symbol is new to it, the tree's NYT code
+ * is written and the symbol is then coded with one order-0 tree shared by every context, which escapes in turn to the
+ * symbol number as a VTree does. The first symbol has no context and goes straight to the order-0 tree.
+ *
+ * The trees of every context together are bounded by a memory limit. Once their estimated size passes it, every
+ * context tree is forgotten and the contexts start again, which the decoder does at the same symbol, so the limit
+ * must be the same for both. The files written by encode(String, String) record it.
+ *
+ * A file is a header, written big-endian, of the magic number, NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, the id
+ * of the EngineType of the trees, the memory limit and the original length, followed by the code as packed bits.
+ * The CoderEngine methods write and read the code alone.
+ */
+public class ContextCoder implements CoderEngine {
+    //"VTX1", marks a file as coded with contexts
+    public static final int MAGIC = 0x56545831;
+    //The estimated size of every context's tree together at which they are forgotten, unless set otherwise
+    public static final long DEFAULT_MEMORY_LIMIT = 64L << 20;
+    //The estimated bytes taken by one node of a tree, across all of its arrays
+    static final int NODE_BYTES = 56;
+    //The nodes a context tree has room for to begin with, as most contexts only ever see a few symbols
+    private static final int CONTEXT_CAPACITY = 16;
+    //The previous symbol before the first symbol
+    private static final int NO_CONTEXT = -1;
+
+    private final Alphabet alphabet;
+    private final EngineType engine;
+    //The tree symbols new to their context are coded with
+    private final VTree order0;
+    //The tree of each context seen, found by the number of its symbol
+    private final SymbolIndex contextIndex;
+    private final List<VTree> contexts = new ArrayList<>();
+    //The estimated size of a context tree before any symbol is added to it
+    private final long treeBytes;
+    private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+    private long memoryUsed = 0;
+    private int previous = NO_CONTEXT;
+
+    /**
+     * Creates a coder for an alphabet, see VTree
+     * @param NUM_SYMBOLS the number of characters in each symbol
+     * @param START_SYMBOL the first character in the alphabet
+     * @param ALPHA_CHARACTERS the number of characters in the alphabet
+     * @param engine the kind of every tree
+     */
+    public ContextCoder(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS, EngineType engine){
+        //Fails if the alphabet is not valid
+        this.alphabet = new Alphabet(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS);
+        this.engine = engine;
+        this.order0 = engine.newTree(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, 0);
+        int alphaSize = alphabet.size;
+        this.contextIndex = new SymbolIndex(alphaSize);
+        //A tree's symbol index is an array for the whole alphabet when it is small enough, see SymbolIndex
+        this.treeBytes = 4L * (alphaSize <= SymbolIndex.DENSE_LIMIT ? alphaSize : 128)
+                + (long)NODE_BYTES * CONTEXT_CAPACITY;
+    }
+
+    public ContextCoder(int NUM_SYMBOLS){
+        this(NUM_SYMBOLS, VTree.TEXT_START_SYMBOL, VTree.TEXT_ALPHA_CHARACTERS, EngineType.VITTER);
+    }
+
+    /**
+     * Creates a coder for byte mode, see VTree.forBytes
+     * @param NUM_SYMBOLS the number of bytes in each symbol
+     * @return the coder, using Vitter's trees
+     */
+    public static ContextCoder forBytes(int NUM_SYMBOLS){
+        return new ContextCoder(NUM_SYMBOLS, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS, EngineType.VITTER);
+    }
+
+    /**
+     * Sets the estimated size, in bytes, of every context's tree together at which they are forgotten. A decoder
+     * must use the same limit as its encoder, except for files, which record it.
+     * @param bytes the limit, DEFAULT_MEMORY_LIMIT by default
+     */
+    public void setMemoryLimit(long bytes){
+        if (bytes < treeBytes) throw new IllegalArgumentException("The limit must allow at least one context");
+        this.memoryLimit = bytes;
+    }
+
+    /**
+     * @return the number of contexts with a tree at present
+     */
+    public int getContextCount(){
+        return contexts.size();
+    }
+
+    @Override
+    public byte[] encode(byte[] data){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 16);
+        try {
+            encode(new ByteArrayInputStream(data), bytes);
+        }catch (IOException e){
+            //In memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public byte[] decode(byte[] code) throws InvalidSequenceException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(code.length * 2 + 16);
+        try {
+            decode(new BitReader(new ByteArrayInputStream(code)), bytes, Long.MAX_VALUE);
+        }catch (IOException e){
+            //In memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes a stream. A last symbol short of NUM_SYMBOLS characters is padded with new lines, as VTree does.
+     * Neither stream is closed.
+     */
+    @Override
+    public void encode(InputStream in, OutputStream out) throws IOException{
+        BitWriter bits = new BitWriter(out);
+        byte[] buffer = new byte[StreamEncoder.BUFFER_SIZE];
+        int partial = 0;
+        int length = 0;
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)){
+            for (int i = 0; i < read; i++){
+                partial = alphabet.extendSymbolNumber(partial, (char)(buffer[i] & 0xFF));
+                if (++length == alphabet.numSymbols){
+                    encodeSymbol(partial, bits);
+                    partial = 0;
+                    length = 0;
+                }
+            }
+        }
+        if (length > 0){
+            while (length++ < alphabet.numSymbols){
+                partial = alphabet.extendSymbolNumber(partial, '\n');
+            }
+            encodeSymbol(partial, bits);
+        }
+        bits.finish();
+    }
+
+    @Override
+    public void decode(InputStream in, OutputStream out) throws IOException, InvalidSequenceException{
+        decode(new BitReader(in), out, Long.MAX_VALUE);
+    }
+
+    @Override
+    public void add(String s){
+        if (s == null) return;
+        int symbol = 0;
+        for (int i = 0; i < s.length(); i++){
+            symbol = alphabet.extendSymbolNumber(symbol, s.charAt(i));
+        }
+        VTree tree = context();
+        if (tree != null && tree.contains(symbol)){
+            tree.add(tree.findNode(symbol), symbol);
+        }else {
+            order0.add(order0.findNode(symbol), symbol);
+            if (tree != null) addToContext(tree, symbol);
+        }
+        next(symbol);
+    }
+
+    /**
+     * Forgets every context and empties the order-0 tree. The memory limit is kept.
+     */
+    @Override
+    public void reset(){
+        order0.reset();
+        forgetContexts();
+        previous = NO_CONTEXT;
+    }
+
+    /**
+     * Encodes a file, recording in a header everything needed to decode it
+     * @param input the file to be encoded
+     * @param output the file the encoding is written to
+     * @throws IOException when there is difficulty reading or writing the files
+     */
+    public void encode(String input, String output) throws IOException{
+        try (InputStream in = new BufferedInputStream(new FileInputStream(input));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))){
+            out.writeInt(MAGIC);
+            out.writeInt(alphabet.numSymbols);
+            out.writeChar(alphabet.startSymbol);
+            out.writeInt(alphabet.alphaCharacters);
+            out.writeInt(engine.id);
+            out.writeLong(memoryLimit);
+            out.writeLong(new File(input).length());
+            reset();
+            encode(in, out);
+        }
+    }
+
+    /**
+     * Checks whether a file starts like one written by encode(String, String)
+     * @param path the file
+     * @return true if the file was coded with contexts
+     * @throws IOException when the file can not be read
+     */
+    public static boolean isContext(String path) throws IOException{
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))){
+            return in.readInt() == MAGIC;
+        }catch (EOFException e){
+            return false;
+        }
+    }
+
+    /**
+     * Decodes a file written by encode(String, String). The header says everything needed to decode it.
+     * @param input the encoding
+     * @param output the file the decoding is written to
+     * @throws IOException when there is difficulty reading or writing the files
+     * @throws InvalidSequenceException when the encoding is not valid
+     */
+    public static void decode(String input, String output) throws IOException, InvalidSequenceException{
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(input)));
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(output))){
+            if (in.readInt() != MAGIC) throw new InvalidSequenceException();
+            int numSymbols = in.readInt();
+            char startSymbol = in.readChar();
+            int alphaCharacters = in.readInt();
+            EngineType engine = EngineType.forId(in.readInt());
+            long memoryLimit = in.readLong();
+            long length = in.readLong();
+            if (engine == null || length < 0) throw new InvalidSequenceException();
+            ContextCoder coder;
+            try {
+                coder = new ContextCoder(numSymbols, startSymbol, alphaCharacters, engine);
+                coder.setMemoryLimit(memoryLimit);
+            }catch (IllegalArgumentException e){
+                throw new InvalidSequenceException();
+            }
+            coder.decode(new BitReader(in), out, length);
+        }catch (EOFException e){
+            throw new InvalidSequenceException();
+        }
+    }
+
+    /**
+     * Decodes symbols until the code ends, writing at most a number of characters
+     */
+    private void decode(BitReader in, OutputStream out, long length) throws IOException, InvalidSequenceException{
+        byte[] buffer = new byte[StreamEncoder.BUFFER_SIZE + alphabet.numSymbols];
+        int filled = 0;
+        long written = 0;
+        while (in.hasMoreBits()){
+            if (written >= length) throw new InvalidSequenceException();
+            alphabet.writeSymbol(decodeSymbol(in), buffer, filled);
+            int characters = (int)Math.min(alphabet.numSymbols, length - written);
+            filled += characters;
+            written += characters;
+            if (filled >= StreamEncoder.BUFFER_SIZE){
+                out.write(buffer, 0, filled);
+                filled = 0;
+            }
+        }
+        out.write(buffer, 0, filled);
+        if (length != Long.MAX_VALUE && written != length) throw new InvalidSequenceException();
+    }
+
+    private void encodeSymbol(int symbol, BitWriter out) throws IOException{
+        VTree tree = context();
+        if (tree == null || !tree.encodeIfKnown(symbol, out)){
+            order0.encodeSymbol(symbol, out);
+            if (tree != null) addToContext(tree, symbol);
+        }
+        next(symbol);
+    }
+
+    private int decodeSymbol(BitReader in) throws IOException, InvalidSequenceException{
+        VTree tree = context();
+        int symbol = (tree == null) ? -1 : tree.decodeIfKnown(in);
+        if (symbol < 0){
+            symbol = order0.decodeSymbol(in);
+            if (tree != null){
+                //The encoder only escapes symbols its context has not seen
+                if (tree.contains(symbol)) throw new InvalidSequenceException();
+                addToContext(tree, symbol);
+            }
+        }
+        next(symbol);
+        return symbol;
+    }
+
+    /**
+     * @return the tree of the previous symbol, created if this is the first time it is a context, or null before
+     * the first symbol
+     */
+    private VTree context(){
+        if (previous == NO_CONTEXT) return null;
+        int i = contextIndex.get(previous);
+        if (i >= 0) return contexts.get(i);
+        VTree tree = engine.newTree(alphabet.numSymbols, alphabet.startSymbol, alphabet.alphaCharacters,
+                CONTEXT_CAPACITY);
+        contextIndex.put(previous, contexts.size());
+        contexts.add(tree);
+        memoryUsed += treeBytes;
+        return tree;
+    }
+
+    /**
+     * Adds a symbol new to a context's tree, which gives it two nodes
+     */
+    private void addToContext(VTree tree, int symbol){
+        tree.add(tree.getNYT(), symbol);
+        memoryUsed += 2L * NODE_BYTES;
+    }
+
+    /**
+     * Moves to the context of a symbol just coded, first forgetting every context if they have grown past the limit
+     */
+    private void next(int symbol){
+        if (memoryUsed > memoryLimit) forgetContexts();
+        previous = symbol;
+    }
+
+    private void forgetContexts(){
+        contextIndex.clear();
+        contexts.clear();
+        memoryUsed = 0;
+    }
+}
@@ -0,0 +1,162 @@
+package vitterImpl;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what happens in the trees it is given to, and can be registered as an MBean to watch them through JMX (eg:
+ * with JConsole). Safe to share between trees used on different threads.
+ */
+public class CountingMetrics implements TreeMetrics, CountingMetricsMBean {
+    //Codes can never be this long, see VTree.writeEncoding
+    private static final int MAX_CODE_LENGTH = 64;
+
+    private final LongAdder symbols = new LongAdder();
+    private final LongAdder escapes = new LongAdder();
+    private final LongAdder swaps = new LongAdder();
+    private final LongAdder increments = new LongAdder();
+    private final LongAdder rescales = new LongAdder();
+    private final LongAdder codeBits = new LongAdder();
+    private final LongAdder escapeBits = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final AtomicLongArray codeLengths = new AtomicLongArray(MAX_CODE_LENGTH);
+
+    @Override
+    public void symbol(int codeBits, int escapeBits){
+        symbols.increment();
+        this.codeBits.add(codeBits);
+        codeLengths.incrementAndGet(codeBits);
+        if (escapeBits > 0){
+            escapes.increment();
+            this.escapeBits.add(escapeBits);
+        }
+    }
+
+    @Override
+    public void swap(){
+        swaps.increment();
+    }
+
+    @Override
+    public void increment(){
+        increments.increment();
+    }
+
+    @Override
+    public void rescale(){
+        rescales.increment();
+    }
+
+    @Override
+    public void encodeTime(long nanos){
+        encodeNanos.add(nanos);
+    }
+
+    @Override
+    public void decodeTime(long nanos){
+        decodeNanos.add(nanos);
+    }
+
+    @Override
+    public long getSymbols(){
+        return symbols.sum();
+    }
+
+    @Override
+    public long getEscapes(){
+        return escapes.sum();
+    }
+
+    @Override
+    public long getSwaps(){
+        return swaps.sum();
+    }
+
+    @Override
+    public long getIncrements(){
+        return increments.sum();
+    }
+
+    @Override
+    public long getRescales(){
+        return rescales.sum();
+    }
+
+    @Override
+    public long getBits(){
+        return codeBits.sum() + escapeBits.sum();
+    }
+
+    @Override
+    public double getAverageCodeLength(){
+        long n = symbols.sum();
+        return (n == 0) ? 0 : codeBits.sum() / (double)n;
+    }
+
+    @Override
+    public int getMaxDepth(){
+        for (int i = MAX_CODE_LENGTH - 1; i > 0; i--){
+            if (codeLengths.get(i) > 0) return i;
+        }
+        return 0;
+    }
+
+    @Override
+    public long[] getCodeLengthHistogram(){
+        long[] histogram = new long[getMaxDepth() + 1];
+        for (int i = 0; i < histogram.length; i++){
+            histogram[i] = codeLengths.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public long getEncodeNanos(){
+        return encodeNanos.sum();
+    }
+
+    @Override
+    public long getDecodeNanos(){
+        return decodeNanos.sum();
+    }
+
+    @Override
+    public void reset(){
+        symbols.reset();
+        escapes.reset();
+        swaps.reset();
+        increments.reset();
+        rescales.reset();
+        codeBits.reset();
+        escapeBits.reset();
+        encodeNanos.reset();
+        decodeNanos.reset();
+        for (int i = 0; i < MAX_CODE_LENGTH; i++){
+            codeLengths.set(i, 0);
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server
+     * @param name tells these metrics apart from others, eg: the file being encoded
+     * @return the name registered under, for unregistering
+     * @throws JMException when the name is not valid or already in use
+     */
+    public ObjectName register(String name) throws JMException{
+        ObjectName objectName = new ObjectName("vitterImpl:type=TreeMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("symbols=%d escapes=%d swaps=%d increments=%d rescales=%d bits=%d " +
+                        "averageCodeLength=%.3f maxDepth=%d encodeMillis=%d decodeMillis=%d", getSymbols(),
+                getEscapes(), getSwaps(), getIncrements(), getRescales(), getBits(), getAverageCodeLength(),
+                getMaxDepth(), getEncodeNanos() / 1000000, getDecodeNanos() / 1000000);
+    }
+}
@@ -0,0 +1,34 @@
+package vitterImpl;
+
+/**
+ * The JMX view of CountingMetrics. Counts are totals since creation or the last reset.
+ */
+public interface CountingMetricsMBean {
+    long getSymbols();
+
+    //Symbols sent as NYT code plus escape, ie: seen for the first time
+    long getEscapes();
+
+    long getSwaps();
+
+    long getIncrements();
+
+    long getRescales();
+
+    //All bits of code and escapes, written when encoding or read when decoding
+    long getBits();
+
+    double getAverageCodeLength();
+
+    //The deepest leaf a symbol has been coded from
+    int getMaxDepth();
+
+    //Element i is the number of symbols whose code was i bits long
+    long[] getCodeLengthHistogram();
+
+    long getEncodeNanos();
+
+    long getDecodeNanos();
+
+    void reset();
+}
@@ -0,0 +1,62 @@
+package vitterImpl;
+
+import java.io.OutputStream;
+
+/**
+ * The kinds of CoderEngine, each making trees for an alphabet. A container records the type its blocks were encoded
+ * with by id.
+ */
+public enum EngineType {
+    //Vitter's algorithm, see VTree
+    VITTER(0),
+    //The algorithm of Faller, Gallager and Knuth, see FGKTree
+    FGK(1);
+
+    //Identifies the type in a container header, so must never change
+    final int id;
+
+    EngineType(int id){
+        this.id = id;
+    }
+
+    /**
+     * Creates a tree of this type that is only used in memory, see VTree(int, char, int, OutputStream)
+     * @param NUM_SYMBOLS the number of characters in each symbol
+     * @param START_SYMBOL the first character in the alphabet
+     * @param ALPHA_CHARACTERS the number of characters in the alphabet
+     * @return the tree
+     */
+    public CoderEngine newTree(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS){
+        return newTree(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, 0);
+    }
+
+    /**
+     * Creates a tree of this type that is only used in memory, with room for a number of nodes to begin with. For
+     * the coders of this package, which work with the tree itself.
+     * @param capacity the number of nodes, see VTree(int, char, int, OutputStream, int)
+     */
+    VTree newTree(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS, int capacity){
+        if (this == FGK) return new FGKTree(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, (OutputStream)null, capacity);
+        return new VTree(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, (OutputStream)null, capacity);
+    }
+
+    /**
+     * Creates a tree of this type in the state of a snapshot, see VTree(TreeSnapshot)
+     * @param snapshot a snapshot of a tree of this type
+     */
+    VTree newTree(TreeSnapshot snapshot){
+        if (this == FGK) return new FGKTree(snapshot);
+        return new VTree(snapshot);
+    }
+
+    /**
+     * @param id an id recorded by a container
+     * @return the type with that id, or null if there is none
+     */
+    static EngineType forId(int id){
+        for (EngineType t : values()){
+            if (t.id == id) return t;
+        }
+        return null;
+    }
+}
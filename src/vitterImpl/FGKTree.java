@@ -0,0 +1,97 @@
+package vitterImpl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A tree updated by the algorithm of Faller, Gallager and Knuth (FGK): before the weight of a node is incremented it
+ * is swapped with the highest numbered node of the same weight (other than its parent), whether that is a leaf or
+ * an internal node. In every other way, the alphabet, escapes and the format of the code, it is a VTree. Its blocks
+ * hold every node of a weight, as the swaps need, rather than being split into internal nodes and leaves.
+ *
+ * FGK keeps the sibling property, so the code is a Huffman code for the weights after every symbol, but unlike
+ * Vitter's algorithm it does not keep the tree at the least height and sum of code lengths among such codes, so may
+ * spend more bits. Its updates do a little less work. Use EngineType to choose between them.
+ */
+public class FGKTree extends VTree {
+    /**
+     * Creates a tree that writes to a stream rather than a file, see VTree(int, char, int, OutputStream)
+     * @param NUM_SYMBOLS the number of characters in each symbol
+     * @param START_SYMBOL the first character in the alphabet
+     * @param ALPHA_CHARACTERS the number of characters in the alphabet
+     * @param output the stream encode(InputStream) and decode(InputStream) write to and close, or null for a tree
+     * only used in memory
+     */
+    public FGKTree(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS, OutputStream output){
+        this(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, output, 0);
+    }
+
+    FGKTree(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS, OutputStream output, int capacity){
+        super(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, output, capacity, EngineType.FGK);
+    }
+
+    //The output file is not opened until something is written to it
+    public FGKTree(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS, String output) throws IOException{
+        super(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, output, EngineType.FGK);
+    }
+
+    public FGKTree(int NUM_SYMBOLS) throws IOException{
+        this(NUM_SYMBOLS, TEXT_START_SYMBOL, TEXT_ALPHA_CHARACTERS, "output.txt");
+    }
+
+    /**
+     * Creates a tree in the state of a snapshot of an FGKTree, see VTree(TreeSnapshot)
+     * @param snapshot the snapshot
+     * @throws IllegalArgumentException when the snapshot is of another kind of tree
+     */
+    public FGKTree(TreeSnapshot snapshot){
+        super(snapshot, EngineType.FGK);
+    }
+
+    /**
+     * FGK's update
+     * @param n the node representing this symbol
+     * @param s the symbol number
+     */
+    @Override
+    void update(int n, int s){
+        //Manage unseen characters
+        if (n == getNYT()){
+            addToZeroNode(n, s); //note that n is the parent of the newly created symbol
+            //The old NYT node leads the block of weight 0 and the new symbol is numbered just after it, so both go to
+            //weight 1 without any swaps
+            int leaf = child(n, 1);
+            incrementLeader(n);
+            incrementLeader(leaf);
+            adapt(getParent(n));
+        }else{ //We have seen this value before
+            adapt(n);
+        }
+    }
+
+    /**
+     * Internal adaption method. Updates the tree to maintain the invariant, walking from a node up to the head.
+     * Each step swaps the node with the leader of its block and increments it, so costs no more than the depth.
+     * @param n node which is the frame of reference for this adaption.
+     */
+    private void adapt(int n){
+        while (n != NONE){
+            int block = getNextBlock(n);
+            if (block != NONE && n != 0){
+                swap(block, n);
+                n = block;
+            }
+            int p = getParent(n);
+            if (n != 0 && p == n - 1 && getWeight(p) == getWeight(n)){
+                //The sibling of n is the NYT node, so n and its parent are the two leaders of the same block.
+                //Incrementing the parent first keeps both blocks contiguous; the parent never swaps as it leads.
+                incrementLeader(p);
+                incrementLeader(n);
+                n = getParent(p);
+            }else {
+                incrementLeader(n);
+                n = p;
+            }
+        }
+    }
+}
@@ -20,6 +20,11 @@ public class Node {
     public Node right;
     public Node parent;
 
+    /*
+     * The position in the implicit numbering of the VTree this node is a view of, 0 being the head.
+     */
+    int number;
+
     /**
      * Creates a Node with predetermined left and right nodes
      * @param left left node
@@ -107,6 +112,22 @@ public class Node {
     }
 
 
+    /**
+     * Makes this node show the state of a node of a VTree. Weights from a VTree are never negative.
+     * @param w the weight
+     * @param c the value
+     * @param left the left node
+     * @param right the right node
+     * @param parent the parent node
+     */
+    void show(int w, String c, Node left, Node right, Node parent){
+        weight = w;
+        value = c;
+        this.left = left;
+        this.right = right;
+        this.parent = parent;
+    }
+
     public boolean isLeaf(){
         return ( left == null && right == null);
     }
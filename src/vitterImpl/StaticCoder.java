@@ -0,0 +1,436 @@
+package vitterImpl;
+
+import bitStream.BitWriter;
+import exceptions.AlphabetException;
+import exceptions.InvalidSequenceException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Encodes input with a static Huffman code in two passes, for files at rest that do not need an adaptive code.
+ *
+ * The first pass counts the symbols of the input, its chunks counted in parallel on a ForkJoinPool. A Huffman code
+ * is built for the counts and the second pass encodes every symbol with a lookup of its code. Decoding reads the
+ * code from the header and finds each symbol with a table lookup (see CanonicalCode), so both directions are several
+ * times faster than a VTree, which must update the tree after every symbol. Symbols are numbered by an Alphabet, as in
+ * a VTree: symbols are NUM_SYMBOLS characters from ALPHA_CHARACTERS starting at START_SYMBOL.
+ *
+ * The format, written big-endian, is: the magic number, NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, the original
+ * length, the code (see CanonicalCode.write) and then the code of every symbol as packed bits, ended as BitWriter
+ * ends them. A last symbol short of NUM_SYMBOLS characters is padded with START_SYMBOL, which decoding removes.
+ */
+public class StaticCoder {
+    //"VTH1", marks a file as statically encoded
+    public static final int MAGIC = 0x56544831;
+    //The number of characters counted by each task of the first pass, rounded down to a whole number of symbols
+    static final int CHUNK_SIZE = 1 << 20;
+    //The size of the buffer decoded characters are gathered in
+    private static final int OUTPUT_SIZE = 1 << 16;
+
+    private final Alphabet alphabet;
+    private final int chunkSize;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /**
+     * Creates a coder for an alphabet, see VTree
+     * @param NUM_SYMBOLS the number of characters in each symbol
+     * @param START_SYMBOL the first character in the alphabet
+     * @param ALPHA_CHARACTERS the number of characters in the alphabet
+     */
+    public StaticCoder(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS){
+        //Fails if the alphabet is not valid
+        this.alphabet = new Alphabet(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS);
+        this.chunkSize = Math.max(NUM_SYMBOLS, CHUNK_SIZE - CHUNK_SIZE % NUM_SYMBOLS);
+    }
+
+    public StaticCoder(int NUM_SYMBOLS){
+        this(NUM_SYMBOLS, VTree.TEXT_START_SYMBOL, VTree.TEXT_ALPHA_CHARACTERS);
+    }
+
+    /**
+     * Creates a coder for byte mode, see VTree.forBytes
+     * @param NUM_SYMBOLS the number of bytes in each symbol
+     * @return the coder
+     */
+    public static StaticCoder forBytes(int NUM_SYMBOLS){
+        return new StaticCoder(NUM_SYMBOLS, VTree.BYTE_START_SYMBOL, VTree.BYTE_ALPHA_CHARACTERS);
+    }
+
+    /**
+     * Sets the pool the symbols are counted on, the common pool by default
+     * @param pool the pool
+     */
+    public void setPool(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    /**
+     * Encodes some bytes, each byte being one character
+     * @param data the bytes to be encoded
+     * @return the encoding
+     * @throws IllegalArgumentException when a byte is not in the alphabet
+     */
+    public byte[] encode(byte[] data){
+        List<ByteBuffer> chunks = new ArrayList<>();
+        addChunks(ByteBuffer.wrap(data), chunks);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 64);
+        try {
+            encode(chunks, data.length, bytes);
+        }catch (IOException e){
+            //In memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes a file. The file is memory-mapped and read twice, once to count its symbols and once to encode them.
+     * @param input the file to be encoded
+     * @param output the file the encoding is written to
+     * @throws IOException when there is difficulty reading or writing the files
+     * @throws IllegalArgumentException when a byte of the file is not in the alphabet
+     */
+    public void encode(String input, String output) throws IOException{
+        //Mappings hold whole chunks, so no symbol is split between them
+        long segmentSize = ChannelInput.MAP_SEGMENT - ChannelInput.MAP_SEGMENT % chunkSize;
+        try (FileChannel in = FileChannel.open(Paths.get(input), StandardOpenOption.READ);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(output))){
+            long length = in.size();
+            List<ByteBuffer> chunks = new ArrayList<>();
+            for (long position = 0; position < length; position += segmentSize){
+                addChunks(in.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, length - position)),
+                        chunks);
+            }
+            encode(chunks, length, out);
+        }
+    }
+
+    /**
+     * Checks whether a file starts like a static encoding
+     * @param path the file
+     * @return true if the file was written by a StaticCoder
+     * @throws IOException when the file can not be read
+     */
+    public static boolean isStatic(String path) throws IOException{
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))){
+            return in.readInt() == MAGIC;
+        }catch (EOFException e){
+            return false;
+        }
+    }
+
+    /**
+     * Decodes an encoding held in memory. The header says everything needed to decode it.
+     * @param code the encoding
+     * @return the bytes decoded
+     * @throws InvalidSequenceException when the encoding is not valid
+     */
+    public static byte[] decode(byte[] code) throws InvalidSequenceException{
+        Source in = new Source(ByteBuffer.wrap(code), null);
+        try {
+            Header header = Header.read(in);
+            if (header.length > Integer.MAX_VALUE - 8) throw new InvalidSequenceException();
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int)Math.min(header.length, OUTPUT_SIZE));
+            header.decode(in, code.length - in.consumed, (code.length > 0) ? code[code.length - 1] : 0, out);
+            return out.toByteArray();
+        }catch (IOException e){
+            //Only the end of the array can stop it being read
+            throw new InvalidSequenceException();
+        }
+    }
+
+    /**
+     * Decodes an encoding in a file, which is memory-mapped if it is large
+     * @param input the encoding
+     * @param output the file the decoding is written to
+     * @throws IOException when there is difficulty reading or writing the files
+     * @throws InvalidSequenceException when the encoding is not valid
+     */
+    public static void decode(String input, String output) throws IOException, InvalidSequenceException{
+        try (FileChannel in = FileChannel.open(Paths.get(input), StandardOpenOption.READ);
+             OutputStream out = new FileOutputStream(output)){
+            long size = in.size();
+            ByteBuffer trailer = ByteBuffer.allocate(1);
+            if (size > 0) in.read(trailer, size - 1);
+            Source source = new Source(null, new ChannelInput(in));
+            Header header = Header.read(source);
+            header.decode(source, size - source.consumed, trailer.get(0), out);
+        }catch (EOFException e){
+            throw new InvalidSequenceException();
+        }
+    }
+
+    /**
+     * Splits input into chunks of chunkSize characters, each a buffer from 0 to its limit
+     */
+    private void addChunks(ByteBuffer data, List<ByteBuffer> chunks){
+        for (int position = 0; position < data.limit(); position += chunkSize){
+            ByteBuffer chunk = data.duplicate();
+            chunk.position(position);
+            chunk.limit(Math.min(data.limit(), position + chunkSize));
+            chunks.add(chunk.slice());
+        }
+    }
+
+    /**
+     * Counts the symbols of the chunks, builds a code for them and writes the encoding
+     */
+    private void encode(List<ByteBuffer> chunks, long length, OutputStream out) throws IOException{
+        Histogram counts = chunks.isEmpty() ? new Histogram(0) : pool.invoke(new Count(chunks, 0, chunks.size()));
+        CanonicalCode code = CanonicalCode.forCounts(Arrays.copyOf(counts.symbols, counts.size),
+                Arrays.copyOf(counts.counts, counts.size), alphabet.size);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(alphabet.numSymbols);
+        header.writeChar(alphabet.startSymbol);
+        header.writeInt(alphabet.alphaCharacters);
+        header.writeLong(length);
+        code.write(header);
+        BitWriter bits = new BitWriter(out);
+        for (ByteBuffer chunk : chunks){
+            for (int i = 0; i < chunk.limit(); i += alphabet.numSymbols){
+                int position = code.position(symbolAt(chunk, i));
+                bits.write(code.code(position), code.length(position));
+            }
+        }
+        bits.finish();
+    }
+
+    /**
+     * @return the number of the symbol starting at an offset of a chunk, padded with START_SYMBOL past its end
+     */
+    private int symbolAt(ByteBuffer chunk, int offset){
+        int number = 0;
+        for (int i = offset; i < offset + alphabet.numSymbols; i++){
+            number = alphabet.extendSymbolNumber(number, (i < chunk.limit()) ? (char)(chunk.get(i) & 0xFF)
+                    : alphabet.startSymbol);
+        }
+        return number;
+    }
+
+    /**
+     * Counts the symbols of one chunk. Small alphabets are counted in an array indexed by symbol number, others by
+     * sorting the chunk's symbols.
+     */
+    private Histogram count(ByteBuffer chunk){
+        int n = alphabet.numSymbols;
+        int symbols = (chunk.limit() + n - 1) / n;
+        int alphaSize = alphabet.size;
+        if (alphaSize <= SymbolIndex.DENSE_LIMIT){
+            int[] counts = new int[alphaSize];
+            for (int i = 0; i < chunk.limit(); i += n){
+                counts[symbolAt(chunk, i)]++;
+            }
+            Histogram h = new Histogram(Math.min(alphaSize, symbols));
+            for (int s = 0; s < alphaSize; s++){
+                if (counts[s] > 0) h.add(s, counts[s]);
+            }
+            return h;
+        }
+        int[] numbers = new int[symbols];
+        for (int i = 0, k = 0; i < chunk.limit(); i += n){
+            numbers[k++] = symbolAt(chunk, i);
+        }
+        Arrays.sort(numbers);
+        Histogram h = new Histogram(symbols);
+        for (int i = 0; i < symbols; ){
+            int run = i;
+            while (run < symbols && numbers[run] == numbers[i]) run++;
+            h.add(numbers[i], run - i);
+            i = run;
+        }
+        return h;
+    }
+
+    /**
+     * Counts the symbols of a range of chunks, splitting it in two until it is one chunk
+     */
+    private final class Count extends RecursiveTask<Histogram> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ByteBuffer> chunks;
+        private final int from;
+        private final int to;
+
+        Count(List<ByteBuffer> chunks, int from, int to){
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Histogram compute(){
+            if (to - from == 1) return count(chunks.get(from));
+            int middle = (from + to) >>> 1;
+            Count left = new Count(chunks, from, middle);
+            left.fork();
+            Histogram right = new Count(chunks, middle, to).compute();
+            return Histogram.merge(left.join(), right);
+        }
+    }
+
+    /**
+     * The counts of the symbols seen, in order of symbol number
+     */
+    private static final class Histogram {
+        int[] symbols;
+        long[] counts;
+        int size = 0;
+
+        Histogram(int capacity){
+            symbols = new int[capacity];
+            counts = new long[capacity];
+        }
+
+        void add(int symbol, long count){
+            symbols[size] = symbol;
+            counts[size++] = count;
+        }
+
+        /**
+         * @return the counts of both, which are not changed
+         */
+        static Histogram merge(Histogram a, Histogram b){
+            Histogram m = new Histogram(a.size + b.size);
+            int i = 0;
+            int j = 0;
+            while (i < a.size || j < b.size){
+                if (j == b.size || (i < a.size && a.symbols[i] < b.symbols[j])){
+                    m.add(a.symbols[i], a.counts[i++]);
+                }else if (i == a.size || b.symbols[j] < a.symbols[i]){
+                    m.add(b.symbols[j], b.counts[j++]);
+                }else {
+                    m.add(a.symbols[i], a.counts[i++] + b.counts[j++]);
+                }
+            }
+            return m;
+        }
+    }
+
+    /**
+     * The header of an encoding, and the decoding of the codes after it
+     */
+    private static final class Header {
+        final Alphabet alphabet;
+        final long length;
+        final CanonicalCode code;
+
+        private Header(Alphabet alphabet, long length, CanonicalCode code){
+            this.alphabet = alphabet;
+            this.length = length;
+            this.code = code;
+        }
+
+        static Header read(InputStream source) throws IOException, InvalidSequenceException{
+            DataInputStream in = new DataInputStream(source);
+            if (in.readInt() != MAGIC) throw new InvalidSequenceException();
+            int numSymbols = in.readInt();
+            char startSymbol = in.readChar();
+            int alphaCharacters = in.readInt();
+            long length = in.readLong();
+            Alphabet alphabet;
+            try {
+                alphabet = new Alphabet(numSymbols, startSymbol, alphaCharacters);
+            }catch (AlphabetException e){
+                throw new InvalidSequenceException();
+            }
+            if (length < 0) throw new InvalidSequenceException();
+            return new Header(alphabet, length, CanonicalCode.read(in, alphabet.size));
+        }
+
+        /**
+         * Decodes the codes following the header
+         * @param in the codes, read a byte at a time
+         * @param codeBytes the number of bytes left, including the trailer
+         * @param trailer the last byte, the number of bits of padding before it
+         * @param out where the characters are written
+         */
+        void decode(Source in, long codeBytes, byte trailer, OutputStream out)
+                throws IOException, InvalidSequenceException{
+            if (codeBytes < 1 || trailer < 0 || trailer > 7) throw new InvalidSequenceException();
+            int n = alphabet.numSymbols;
+            //The characters of every symbol with a code, by position
+            byte[] spelled = new byte[code.size() * n];
+            for (int p = 0; p < code.size(); p++){
+                alphabet.writeSymbol(code.symbol(p), spelled, p * n);
+            }
+            long bytesLeft = codeBytes - 1;
+            long bitsLeft = bytesLeft * 8 - trailer;
+            //The next bits, most significant first
+            long window = 0;
+            int available = 0;
+            byte[] buffer = new byte[Math.max(OUTPUT_SIZE, n)];
+            int filled = 0;
+            for (long written = 0; written < length; ){
+                while (available <= 56 && bytesLeft > 0){
+                    int b = in.read();
+                    if (b < 0) throw new EOFException();
+                    window |= (long)b << (56 - available);
+                    available += 8;
+                    bytesLeft--;
+                }
+                int p = code.decode(window);
+                if (p < 0 || code.length(p) > bitsLeft) throw new InvalidSequenceException();
+                window <<= code.length(p);
+                available -= code.length(p);
+                bitsLeft -= code.length(p);
+                int characters = (int)Math.min(n, length - written);
+                if (filled + characters > buffer.length){
+                    out.write(buffer, 0, filled);
+                    filled = 0;
+                }
+                if (n == 1){
+                    buffer[filled] = spelled[p];
+                }else {
+                    System.arraycopy(spelled, p * n, buffer, filled, characters);
+                }
+                filled += characters;
+                written += characters;
+            }
+            out.write(buffer, 0, filled);
+            if (bitsLeft != 0) throw new InvalidSequenceException();
+        }
+    }
+
+    /**
+     * Reads a buffer, or a channel a piece at a time, counting the bytes read
+     */
+    private static final class Source extends InputStream {
+        private ByteBuffer piece;
+        private final ChannelInput channel;
+        long consumed = 0;
+
+        Source(ByteBuffer piece, ChannelInput channel){
+            this.piece = piece;
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException{
+            while (piece == null || !piece.hasRemaining()){
+                if (channel == null || (piece = channel.next()) == null) return -1;
+            }
+            consumed++;
+            return piece.get() & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package vitterImpl;
+
+import exceptions.InvalidSequenceException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Decodes a stream a piece at a time with a VTree, the counterpart of StreamEncoder in the style of
+ * java.util.zip.Inflater.
+ *
+ * Encoded bytes can be handed over in chunks of any size, split anywhere, even part way through a code. The decoder
+ * remembers where it is in the tree, and how much of an escape it has read, between calls and writes each symbol as
+ * soon as its last bit arrives. Memory use is constant.
+ *
+ * The last byte of a stream says how many bits of the byte before it are padding, so the two most recent bytes are
+ * held back until more input arrives or finish is called. The zero bytes a sync flush ends with make sure this never
+ * holds back a symbol sent before the flush.
+ */
+public class StreamDecoder {
+    //Marks that no escape is being read
+    private static final int NOT_ESCAPING = -1;
+
+    private final VTree tree;
+    private final Alphabet alphabet;
+    private final int exponent;
+    private final int remainder;
+    private final int numSymbols;
+
+    private byte[] input = new byte[0];
+    private int position = 0;
+    private int limit = 0;
+    //Input given as a buffer rather than an array, eg: a direct or memory-mapped buffer, or null
+    private ByteBuffer buffer = null;
+    //The most recent bytes received, which may turn out to be the end of the stream
+    private final byte[] held = new byte[2];
+    private int heldCount = 0;
+    //Decoded characters are gathered here until decode hands them to the caller. Decoding to a channel gathers them
+    //in a direct buffer, which the channel writes as it is.
+    private final ByteBuffer output;
+    private final WritableByteChannel channel;
+
+    //Where we are in the tree, 0 being the head, and the bits it took to get there
+    private int node = 0;
+    private int codeLength = 0;
+    //The bits of the escape read so far, or NOT_ESCAPING
+    private int escapeValue = 0;
+    private int escapeLength = NOT_ESCAPING;
+    //Padding bits of a flush marker still to be skipped
+    private int skip = 0;
+    //The number of bits and symbols decoded so far
+    private long bitPosition = 0;
+    private long symbols = 0;
+
+    private boolean finishRequested = false;
+    private boolean finished = false;
+
+    /**
+     * Creates a decoder, which should be the only user of the tree from now on
+     * @param tree the tree to decode with, in the state the encoder's tree started in
+     */
+    public StreamDecoder(VTree tree){
+        this.tree = tree;
+        this.exponent = tree.getExponent();
+        this.remainder = tree.getRemainder();
+        this.alphabet = tree.getAlphabet();
+        this.numSymbols = alphabet.numSymbols;
+        this.output = ByteBuffer.allocate(StreamEncoder.BUFFER_SIZE);
+        this.channel = null;
+    }
+
+    /**
+     * Creates a decoder that writes straight to a channel, for the channel methods of VTree. Output is written by
+     * decode(), not decode(OutputStream).
+     * @param tree the tree to decode with, in the state the encoder's tree started in
+     * @param out the channel the decoding is written to, which is not closed
+     */
+    StreamDecoder(VTree tree, WritableByteChannel out){
+        this.tree = tree;
+        this.exponent = tree.getExponent();
+        this.remainder = tree.getRemainder();
+        this.alphabet = tree.getAlphabet();
+        this.numSymbols = alphabet.numSymbols;
+        this.output = ByteBuffer.allocateDirect(ChannelInput.PIECE_SIZE);
+        this.channel = out;
+    }
+
+    /**
+     * Sets the encoded input to be decoded by the next call to decode. The array is not copied, so must not be
+     * changed until it has been decoded.
+     * @param b the input
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     */
+    public void setInput(byte[] b, int off, int len){
+        if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+        input = b;
+        position = off;
+        limit = off + len;
+        buffer = null;
+    }
+
+    /**
+     * Sets the encoded input to be decoded by the next call to decode, being the bytes between the buffer's position
+     * and limit. The buffer is not copied, so its contents must not be changed until it has been decoded; its
+     * position is moved to its limit as it is decoded. Direct and memory-mapped buffers are read in place.
+     * @param b the input
+     */
+    public void setInput(ByteBuffer b){
+        if (b.hasArray()){
+            setInput(b.array(), b.arrayOffset() + b.position(), b.remaining());
+            b.position(b.limit());
+            return;
+        }
+        position = limit = 0;
+        buffer = b;
+    }
+
+    /**
+     * @return true if all the input given has been decoded
+     */
+    public boolean needsInput(){
+        return position == limit && (buffer == null || !buffer.hasRemaining());
+    }
+
+    /**
+     * Signals that the input given so far is the whole stream. The next call to decode ends it.
+     */
+    public void finish(){
+        finishRequested = true;
+    }
+
+    /**
+     * @return true once the end of the stream has been decoded
+     */
+    public boolean finished(){
+        return finished;
+    }
+
+    /**
+     * Decodes all the input given so far and writes every symbol completed to a stream.
+     * @param out the stream the decoding is written to
+     * @throws IOException when the output can not be written
+     * @throws InvalidSequenceException when the input does not form a valid code for this tree, or ends part way
+     * through a code
+     */
+    public void decode(OutputStream out) throws IOException, InvalidSequenceException{
+        if (channel != null) throw new IllegalStateException("This decoder writes to a channel");
+        decode0(out);
+    }
+
+    /**
+     * Decodes all the input given so far and writes every symbol completed to the channel
+     * @throws IOException when the channel can not be written
+     * @throws InvalidSequenceException when the input does not form a valid code for this tree, or ends part way
+     * through a code
+     */
+    void decode() throws IOException, InvalidSequenceException{
+        decode0(null);
+    }
+
+    /**
+     * Decodes all the input given so far
+     * @param out the stream the decoding is written to, or null to write to the channel
+     */
+    private void decode0(OutputStream out) throws IOException, InvalidSequenceException{
+        if (finished) return;
+        CodingEvent event = CodingEvent.start();
+        long start = System.nanoTime();
+        long startBits = bitPosition;
+        long startSymbols = symbols;
+        while (position < limit){
+            addByte(input[position++], out);
+        }
+        if (buffer != null){
+            for (int i = buffer.position(), end = buffer.limit(); i < end; i++){
+                addByte(buffer.get(i), out);
+            }
+            buffer.position(buffer.limit());
+            buffer = null;
+        }
+        if (finishRequested){
+            //Every stream ends with a trailer, even an empty one
+            if (heldCount == 0) throw new InvalidSequenceException();
+            if (heldCount == 2){
+                //The last data byte, the trailer tells us how many of its bits are padding
+                decodeBits(held[0], 8 - (held[1] & 0x07), out);
+            }
+            if (node != 0 || escapeLength != NOT_ESCAPING || skip != 0) throw new InvalidSequenceException();
+            finished = true;
+        }
+        drain(out);
+        if (out != null) out.flush();
+        tree.getMetrics().decodeTime(System.nanoTime() - start);
+        CodingEvent.end(event, false, symbols - startSymbols, bitPosition - startBits);
+    }
+
+    /**
+     * Takes one input byte, decoding the oldest byte held back once it is known not to be the end of the stream
+     * @param b the byte
+     */
+    private void addByte(byte b, OutputStream out) throws IOException, InvalidSequenceException{
+        if (heldCount < held.length){
+            held[heldCount++] = b;
+        }else {
+            decodeBits(held[0], 8, out);
+            held[0] = held[1];
+            held[1] = b;
+        }
+    }
+
+    /**
+     * Decodes the highest bits of a byte
+     * @param b the byte
+     * @param count the number of bits to decode
+     */
+    private void decodeBits(byte b, int count, OutputStream out) throws IOException, InvalidSequenceException{
+        for (int i = 7; i > 7 - count; i--){
+            decodeBit((b >>> i) & 1, out);
+        }
+    }
+
+    /**
+     * Moves the decoder on by one bit
+     * @param bit the bit
+     * @param out the stream any symbol completed is written to
+     */
+    private void decodeBit(int bit, OutputStream out) throws IOException, InvalidSequenceException{
+        bitPosition++;
+        if (skip > 0){
+            if (bit != 0) throw new InvalidSequenceException();
+            skip--;
+        }else if (escapeLength == NOT_ESCAPING){
+            //special case, the empty tree sends its NYT node as a single 0
+            if (!tree.isLeaf(node)) node = tree.child(node, bit);
+            codeLength++;
+            if (!tree.isLeaf(node)) return;
+            if (node != tree.getNYT()){
+                int s = tree.getSymbol(node);
+                emit(s, out);
+                tree.getMetrics().symbol(codeLength, 0);
+                tree.add(node, s);
+                node = 0;
+                codeLength = 0;
+            }else {
+                escapeValue = 0;
+                escapeLength = 0;
+                endEscape(out);
+            }
+        }else {
+            escapeValue = (escapeValue << 1) | bit;
+            escapeLength++;
+            endEscape(out);
+        }
+    }
+
+    /**
+     * Acts on the escape being read if it is complete, see VTree.readEscape
+     */
+    private void endEscape(OutputStream out) throws IOException{
+        int value;
+        if (escapeLength == exponent && escapeValue >= remainder){
+            value = escapeValue + remainder;
+        }else if (escapeLength == exponent + 1){
+            value = escapeValue;
+        }else {
+            return;
+        }
+        if (tree.contains(value)){
+            //A flush marker rather than a symbol, see VTree.writeFlushMarker
+            skip = (int)(-bitPosition & 7) + VTree.FLUSH_BYTES * 8;
+        }else {
+            emit(value, out);
+            tree.getMetrics().symbol(codeLength, escapeLength);
+            tree.add(tree.getNYT(), value);
+        }
+        escapeLength = NOT_ESCAPING;
+        node = 0;
+        codeLength = 0;
+    }
+
+    /**
+     * Writes the characters of a symbol to the output buffer
+     */
+    private void emit(int s, OutputStream out) throws IOException{
+        if (output.remaining() < numSymbols) drain(out);
+        alphabet.writeSymbol(s, output);
+        symbols++;
+    }
+
+    /**
+     * Writes out the output buffer
+     * @param out the stream it is written to, or null to write it to the channel
+     */
+    private void drain(OutputStream out) throws IOException{
+        if (out != null){
+            out.write(output.array(), 0, output.position());
+        }else {
+            output.flip();
+            while (output.hasRemaining()){
+                channel.write(output);
+            }
+        }
+        output.clear();
+    }
+}
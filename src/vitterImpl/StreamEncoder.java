@@ -0,0 +1,206 @@
+package vitterImpl;
+
+import bitStream.BitWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Encodes a stream a piece at a time with a VTree, in the style of java.util.zip.Deflater.
+ *
+ * Input is handed over with setInput and encoded by encode, which writes every complete byte of output produced so
+ * far. Memory use is bounded by the size of the input given at once, whatever the length of the stream. Each input
+ * byte is one character; characters are gathered into symbols of NUM_SYMBOLS characters, and any characters short of
+ * a whole symbol are held until more input arrives. finish pads the last symbol with new lines, as
+ * VTree.encode(String) does, and ends the stream.
+ *
+ * A sync flush (see flush) encodes everything held so far and pads the output to a byte boundary, so a receiver can
+ * decode every complete symbol sent so far. Its padding is marked so that VTree.decode and StreamDecoder skip it.
+ */
+public class StreamEncoder {
+    //A convenient size for the buffers of callers
+    public static final int BUFFER_SIZE = 8192;
+
+    private final VTree tree;
+    private final Alphabet alphabet;
+    private final int numSymbols;
+    //Complete output bytes are gathered here until encode hands them to the caller, or null if they are written
+    //straight to a channel
+    private final ByteArrayOutputStream pending;
+    private final BitWriter bits;
+
+    private byte[] input = new byte[0];
+    private int position = 0;
+    private int limit = 0;
+    //Input given as a buffer rather than an array, eg: a direct or memory-mapped buffer, or null
+    private ByteBuffer buffer = null;
+    //The number of symbols encoded so far
+    private long symbols = 0;
+    //The characters of a symbol that has not yet been completed
+    private int partialSymbol = 0;
+    private int partialLength = 0;
+
+    private boolean flushRequested = false;
+    private boolean finishRequested = false;
+    private boolean finished = false;
+
+    /**
+     * Creates an encoder, which should be the only user of the tree from now on
+     * @param tree the tree to encode with
+     */
+    public StreamEncoder(VTree tree){
+        this.tree = tree;
+        this.alphabet = tree.getAlphabet();
+        this.numSymbols = alphabet.numSymbols;
+        this.pending = new ByteArrayOutputStream(BUFFER_SIZE);
+        this.bits = new BitWriter(pending);
+    }
+
+    /**
+     * Creates an encoder that writes straight to a channel through the direct buffer of its BitWriter, for the
+     * channel methods of VTree. Output is written by encode(), not encode(OutputStream).
+     * @param tree the tree to encode with
+     * @param out the channel the encoding is written to, which is not closed
+     */
+    StreamEncoder(VTree tree, WritableByteChannel out){
+        this.tree = tree;
+        this.alphabet = tree.getAlphabet();
+        this.numSymbols = alphabet.numSymbols;
+        this.pending = null;
+        this.bits = new BitWriter(out);
+    }
+
+    /**
+     * Sets the input to be encoded by the next call to encode. The array is not copied, so must not be changed
+     * until it has been encoded.
+     * @param b the input
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     */
+    public void setInput(byte[] b, int off, int len){
+        if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+        input = b;
+        position = off;
+        limit = off + len;
+        buffer = null;
+    }
+
+    /**
+     * Sets the input to be encoded by the next call to encode, being the bytes between the buffer's position and
+     * limit. The buffer is not copied, so its contents must not be changed until it has been encoded; its position
+     * is moved to its limit as it is encoded. Direct and memory-mapped buffers are read in place.
+     * @param b the input
+     */
+    public void setInput(ByteBuffer b){
+        if (b.hasArray()){
+            setInput(b.array(), b.arrayOffset() + b.position(), b.remaining());
+            b.position(b.limit());
+            return;
+        }
+        position = limit = 0;
+        buffer = b;
+    }
+
+    /**
+     * @return true if all the input given has been encoded
+     */
+    public boolean needsInput(){
+        return position == limit && (buffer == null || !buffer.hasRemaining());
+    }
+
+    /**
+     * Requests a sync flush: the next call to encode writes out every complete symbol given so far and pads the
+     * output to a whole byte.
+     */
+    public void flush(){
+        flushRequested = true;
+    }
+
+    /**
+     * Signals that no more input will be given. The next call to encode ends the stream.
+     */
+    public void finish(){
+        finishRequested = true;
+    }
+
+    /**
+     * @return true once the end of the stream has been written
+     */
+    public boolean finished(){
+        return finished;
+    }
+
+    /**
+     * Encodes all the input given so far and writes the complete bytes of output to a stream.
+     * @param out the stream the encoding is written to
+     * @throws IOException when the output can not be written
+     */
+    public void encode(OutputStream out) throws IOException{
+        if (pending == null) throw new IllegalStateException("This encoder writes to a channel");
+        if (finished) return;
+        encode();
+        pending.writeTo(out);
+        pending.reset();
+        out.flush();
+    }
+
+    /**
+     * Encodes all the input given so far and writes the complete bytes of output to the BitWriter's destination:
+     * the buffer encode(OutputStream) hands over, or the channel
+     * @throws IOException when the output can not be written
+     */
+    void encode() throws IOException{
+        if (finished) return;
+        CodingEvent event = CodingEvent.start();
+        long start = System.nanoTime();
+        long startBits = bits.getBitCount();
+        long startSymbols = symbols;
+        while (position < limit){
+            addCharacter(input[position++]);
+        }
+        if (buffer != null){
+            for (int i = buffer.position(), end = buffer.limit(); i < end; i++){
+                addCharacter(buffer.get(i));
+            }
+            buffer.position(buffer.limit());
+            buffer = null;
+        }
+        if (finishRequested){
+            if (partialLength > 0){
+                //Add new lines to make it a length we can manage, as encode(String) does
+                while (partialLength < numSymbols){
+                    partialSymbol = alphabet.extendSymbolNumber(partialSymbol, '\n');
+                    partialLength++;
+                }
+                tree.encodeSymbol(partialSymbol, bits);
+                symbols++;
+            }
+            bits.finish();
+            finished = true;
+        }else if (flushRequested){
+            tree.writeFlushMarker(bits);
+            flushRequested = false;
+        }
+        bits.flush();
+        tree.getMetrics().encodeTime(System.nanoTime() - start);
+        CodingEvent.end(event, true, symbols - startSymbols, bits.getBitCount() - startBits);
+    }
+
+    /**
+     * Adds one input byte to the symbol being gathered, encoding the symbol once it is complete
+     * @param b the byte
+     */
+    private void addCharacter(byte b) throws IOException{
+        partialSymbol = alphabet.extendSymbolNumber(partialSymbol, (char)(b & 0xFF));
+        partialLength++;
+        if (partialLength == numSymbols){
+            tree.encodeSymbol(partialSymbol, bits);
+            partialSymbol = 0;
+            partialLength = 0;
+            symbols++;
+        }
+    }
+}
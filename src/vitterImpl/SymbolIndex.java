@@ -0,0 +1,117 @@
+package vitterImpl;
+
+import java.util.Arrays;
+
+/**
+ * Maps a symbol number (see Alphabet.detectSymbolNumber) directly to the leaf holding that symbol.
+ *
+ * Small alphabets use a dense array indexed by the symbol number. Alphabets too large for that (eg: several
+ * characters per symbol) use an open-addressing hash map with linear probing over primitive int keys, which only
+ * grows with the number of symbols actually seen.
+ */
+class SymbolIndex {
+    //Largest alphabet given a dense array
+    static final int DENSE_LIMIT = 1 << 16;
+    //Marks an empty slot in the hash map, and a symbol that has not been seen. Neither symbol numbers nor nodes are
+    //ever negative.
+    private static final int EMPTY = -1;
+
+    //Only one of these representations is in use
+    private int[] dense;
+    private int[] keys;
+    private int[] values;
+    private int size = 0;
+
+    /**
+     * Creates an index for an alphabet of a given size
+     * @param alphabetSize the number of distinct symbols
+     */
+    SymbolIndex(int alphabetSize){
+        if (alphabetSize <= DENSE_LIMIT){
+            dense = new int[alphabetSize];
+            Arrays.fill(dense, EMPTY);
+        }else {
+            keys = new int[64];
+            values = new int[64];
+            Arrays.fill(keys, EMPTY);
+        }
+    }
+
+    /**
+     * @param symbol the symbol number
+     * @return the leaf for this symbol, or -1 if it has not been seen
+     */
+    int get(int symbol){
+        if (dense != null){
+            return (symbol >= 0 && symbol < dense.length) ? dense[symbol] : EMPTY;
+        }
+        int mask = keys.length - 1;
+        for (int i = mix(symbol) & mask; keys[i] != EMPTY; i = (i + 1) & mask){
+            if (keys[i] == symbol) return values[i];
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Records the leaf for a symbol
+     * @param symbol the symbol number
+     * @param n the leaf holding it
+     */
+    void put(int symbol, int n){
+        if (dense != null){
+            dense[symbol] = n;
+            return;
+        }
+        if (2 * (size + 1) > keys.length) grow();
+        if (insert(keys, values, symbol, n)) size++;
+    }
+
+    /**
+     * Forgets every symbol, keeping the memory already allocated
+     */
+    void clear(){
+        Arrays.fill((dense != null) ? dense : keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Inserts into a table, replacing any existing value for the key
+     * @return true if the key was not already present
+     */
+    private static boolean insert(int[] keys, int[] values, int symbol, int n){
+        int mask = keys.length - 1;
+        int i = mix(symbol) & mask;
+        while (keys[i] != EMPTY){
+            if (keys[i] == symbol){
+                values[i] = n;
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = symbol;
+        values[i] = n;
+        return true;
+    }
+
+    /**
+     * Doubles the hash table, keeping the load factor at most one half
+     */
+    private void grow(){
+        int[] newKeys = new int[keys.length * 2];
+        int[] newValues = new int[values.length * 2];
+        Arrays.fill(newKeys, EMPTY);
+        for (int i = 0; i < keys.length; i++){
+            if (keys[i] != EMPTY) insert(newKeys, newValues, keys[i], values[i]);
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    /**
+     * Spreads consecutive symbol numbers across the table
+     */
+    private static int mix(int x){
+        x *= 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+}
@@ -0,0 +1,50 @@
+package vitterImpl;
+
+/**
+ * Receives measurements from a VTree as it encodes and decodes (see VTree.setMetrics). Every method does nothing by
+ * default and NONE, the default for every tree, overrides none of them, so a tree without metrics pays only for
+ * calls that are inlined away.
+ *
+ * Calls are made on whichever thread is using the tree, so an implementation shared between trees (eg: the blocks
+ * of a container) must be thread-safe. See CountingMetrics.
+ */
+public interface TreeMetrics {
+    //Measures nothing
+    TreeMetrics NONE = new TreeMetrics(){};
+
+    /**
+     * A symbol has been encoded or decoded
+     * @param codeBits the length of the code for its leaf, or for the NYT node if it is new, which is the depth of
+     * that node in the tree
+     * @param escapeBits the length of the escape sent after the NYT code, or 0 if the symbol had been seen before
+     */
+    default void symbol(int codeBits, int escapeBits){}
+
+    /**
+     * Two nodes have been swapped, or a node slid past a block, while updating the tree
+     */
+    default void swap(){}
+
+    /**
+     * The weight of a node has been incremented while updating the tree, which moves it to the next block. There is
+     * one increment per level the update climbs, so this measures the work of keeping the tree ordered.
+     */
+    default void increment(){}
+
+    /**
+     * Every weight has been halved and the tree rebuilt, see VTree.setRescaleLimit
+     */
+    default void rescale(){}
+
+    /**
+     * A call to encode has finished
+     * @param nanos the time it took
+     */
+    default void encodeTime(long nanos){}
+
+    /**
+     * A call to decode has finished
+     * @param nanos the time it took
+     */
+    default void decodeTime(long nanos){}
+}
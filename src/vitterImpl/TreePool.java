@@ -0,0 +1,91 @@
+package vitterImpl;
+
+import exceptions.InvalidSequenceException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe pool of trees for encoding or decoding many small messages, eg: the requests of a service. Building
+ * a tree allocates arrays for the whole alphabet, which can cost more than coding a short message, so trees are
+ * reset and reused instead.
+ *
+ * Every tree comes from one factory, so all of them start in the same state and with the same settings (alphabet,
+ * rescale limit, metrics and so on), and a message encoded with one can be decoded with any other.
+ */
+public class TreePool {
+    //The number of idle trees kept unless set otherwise
+    public static final int DEFAULT_MAX_IDLE = 64;
+
+    private final Supplier<? extends CoderEngine> factory;
+    private final ArrayBlockingQueue<CoderEngine> idle;
+
+    /**
+     * Creates a pool
+     * @param factory makes a new tree whenever none is idle, eg: () -> VTree.forBytes(1) or snapshot::newTree
+     * @param maxIdle the most idle trees kept, beyond which returned trees are left to the garbage collector
+     */
+    public TreePool(Supplier<? extends CoderEngine> factory, int maxIdle){
+        this.factory = factory;
+        this.idle = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    public TreePool(Supplier<? extends CoderEngine> factory){
+        this(factory, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Takes a tree from the pool, or makes one if none is idle. It is in its initial state, and should be given back
+     * with release once finished with.
+     * @return the tree
+     */
+    public CoderEngine acquire(){
+        CoderEngine t = idle.poll();
+        return (t == null) ? factory.get() : t;
+    }
+
+    /**
+     * Gives a tree back to the pool, resetting it. It must not be used again by the caller.
+     * @param t a tree from acquire
+     */
+    public void release(CoderEngine t){
+        t.reset();
+        idle.offer(t);
+    }
+
+    /**
+     * Encodes some bytes with a tree from the pool, see CoderEngine.encode(byte[])
+     * @param data the bytes to be encoded
+     * @return the encoding
+     */
+    public byte[] encode(byte[] data){
+        CoderEngine t = acquire();
+        try {
+            return t.encode(data);
+        }finally {
+            release(t);
+        }
+    }
+
+    /**
+     * Decodes an encoding with a tree from the pool, see CoderEngine.decode(byte[])
+     * @param code the encoding
+     * @return the bytes decoded
+     * @throws InvalidSequenceException when the sequence given does not form a valid tree
+     */
+    public byte[] decode(byte[] code) throws InvalidSequenceException{
+        CoderEngine t = acquire();
+        try {
+            return t.decode(code);
+        }finally {
+            release(t);
+        }
+    }
+
+    /**
+     * @return the number of idle trees
+     */
+    public int idleCount(){
+        return idle.size();
+    }
+}
@@ -0,0 +1,153 @@
+package vitterImpl;
+
+import exceptions.InvalidSequenceException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The state of a trained tree (see VTree.snapshot), which new trees of the same kind can start from with newTree so
+ * that short messages do not pay to escape every symbol. A snapshot is immutable and safe to share between threads;
+ * trees started from it copy its arrays rather than change them.
+ *
+ * Only the weights of the leaves are kept, in order of weight and then of symbol number, and the tree is rebuilt
+ * from them, so a snapshot written with write and read back with read starts trees in exactly the same state as the
+ * original. The encoder and decoder of a message must start from the same snapshot. Written big-endian, a snapshot
+ * is: the magic number, the id of the tree's EngineType, NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, the rescale
+ * limit, the number of leaves, and then the symbol number of each leaf and the amount its weight exceeds the last
+ * one's, as variable length integers of 7 bits a byte.
+ */
+public final class TreeSnapshot {
+    //"VTS1", marks the start of a snapshot
+    private static final int MAGIC = 0x56545331;
+
+    final EngineType engine;
+    final int numSymbols;
+    final char startSymbol;
+    final int alphaCharacters;
+    final int rescaleLimit;
+    private final int[] symbols;
+    private final int[] weights;
+    //The tree every tree started from the snapshot is a copy of, which is never changed
+    final VTree tree;
+
+    /**
+     * Creates a snapshot
+     * @param engine the kind of tree the snapshot is of
+     * @param symbols the symbol numbers of the leaves
+     * @param weights their weights, in order and then by symbol number
+     * @throws IllegalArgumentException when the alphabet or leaves are not valid
+     */
+    TreeSnapshot(EngineType engine, int numSymbols, char startSymbol, int alphaCharacters, int rescaleLimit,
+                 int[] symbols, int[] weights){
+        this.engine = engine;
+        this.numSymbols = numSymbols;
+        this.startSymbol = startSymbol;
+        this.alphaCharacters = alphaCharacters;
+        this.rescaleLimit = rescaleLimit;
+        this.symbols = symbols;
+        this.weights = weights;
+        tree = engine.newTree(numSymbols, startSymbol, alphaCharacters, 0);
+        tree.setRescaleLimit(rescaleLimit);
+        tree.prime(symbols, weights);
+    }
+
+    /**
+     * Creates a tree in the state of the snapshot, of the kind it was taken from (see VTree(TreeSnapshot)), eg: for
+     * the factory of a TreePool
+     * @return the tree
+     */
+    public CoderEngine newTree(){
+        return engine.newTree(this);
+    }
+
+    /**
+     * @return the number of symbols the snapshot knows, none of which need escaping
+     */
+    public int symbolCount(){
+        return symbols.length;
+    }
+
+    /**
+     * Writes the snapshot in the form described above
+     * @param out where the snapshot is written
+     * @throws IOException when the snapshot can not be written
+     */
+    public void write(DataOutput out) throws IOException{
+        out.writeInt(MAGIC);
+        out.writeInt(engine.id);
+        out.writeInt(numSymbols);
+        out.writeChar(startSymbol);
+        out.writeInt(alphaCharacters);
+        out.writeInt(rescaleLimit);
+        out.writeInt(symbols.length);
+        int previous = 0;
+        for (int i = 0; i < symbols.length; i++){
+            writeVarInt(out, symbols[i]);
+            writeVarInt(out, weights[i] - previous);
+            previous = weights[i];
+        }
+    }
+
+    /**
+     * Reads a snapshot written by write
+     * @param in where the snapshot is read from
+     * @return the snapshot
+     * @throws IOException when the snapshot can not be read
+     * @throws InvalidSequenceException when the input is not a snapshot
+     */
+    public static TreeSnapshot read(DataInput in) throws IOException, InvalidSequenceException{
+        if (in.readInt() != MAGIC) throw new InvalidSequenceException();
+        EngineType engine = EngineType.forId(in.readInt());
+        if (engine == null) throw new InvalidSequenceException();
+        int numSymbols = in.readInt();
+        char startSymbol = in.readChar();
+        int alphaCharacters = in.readInt();
+        int rescaleLimit = in.readInt();
+        int count = in.readInt();
+        //Each leaf takes at least two bytes, so a count this large could not have been written
+        if (count < 0 || count > Integer.MAX_VALUE / 4) throw new InvalidSequenceException();
+        int[] symbols = new int[Math.min(count, 1 << 16)];
+        int[] weights = new int[symbols.length];
+        long weight = 0;
+        for (int i = 0; i < count; i++){
+            if (i == symbols.length){
+                symbols = Arrays.copyOf(symbols, Math.min(count, 2 * i));
+                weights = Arrays.copyOf(weights, symbols.length);
+            }
+            symbols[i] = readVarInt(in);
+            weight += readVarInt(in);
+            if (weight > Integer.MAX_VALUE) throw new InvalidSequenceException();
+            weights[i] = (int)weight;
+        }
+        try {
+            return new TreeSnapshot(engine, numSymbols, startSymbol, alphaCharacters, rescaleLimit, symbols, weights);
+        }catch (IllegalArgumentException e){
+            //An alphabet or leaves no tree could have been built with
+            throw new InvalidSequenceException();
+        }
+    }
+
+    static void writeVarInt(DataOutput out, int x) throws IOException{
+        while ((x & ~0x7F) != 0){
+            out.writeByte((x & 0x7F) | 0x80);
+            x >>>= 7;
+        }
+        out.writeByte(x);
+    }
+
+    static int readVarInt(DataInput in) throws IOException, InvalidSequenceException{
+        int x = 0;
+        for (int shift = 0; shift < 35; shift += 7){
+            int b = in.readUnsignedByte();
+            x |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0){
+                if (x < 0) throw new InvalidSequenceException();
+                return x;
+            }
+        }
+        throw new InvalidSequenceException();
+    }
+}
@@ -1,11 +1,21 @@
 package vitterImpl;
 
+import bitStream.BitReader;
+import bitStream.BitWriter;
 import exceptions.InvalidSequenceException;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.LinkedList;
 
 /**
@@ -15,37 +25,95 @@ import java.util.LinkedList;
  *
  * In this program I refer to the tree produced by Vitter's as a VTree.
  */
-public class VTree{
+public class VTree implements CoderEngine{
 
     /* Global Variables  and constants */
-    //The character we can consider our "first" synbol eg: position 0 in the alphabet
-    private final char START_SYMBOL;
-    //The size of the alphabet eg: all possible permutations of all the characters
-    private final int ALPHA_SIZE;
-    //The amount of unique characters we can choose from. Must be contiguous from START_SYMBOL. We can consider our
-    //alphabet to be START_SYMBOL to START_SYMBOL + ALPHA_CHARACTERS
-    private final int ALPHA_CHARACTERS;
+    //The number of zero bytes that follow the padding of a flush marker
+    static final int FLUSH_BYTES = 2;
+    //The most descendants of a swapped node whose cached codes are cleared one by one. See invalidateCodes.
+    private static final int INVALIDATE_LIMIT = 64;
+    //Marks the absence of a node (eg: the children of a leaf) or of a symbol (eg: on an internal node)
+    static final int NONE = -1;
+    //Trees of up to this many nodes have their arrays allocated in full up front
+    private static final int PREALLOCATE_LIMIT = 1 << 18;
+    //The number of nodes space is first made for in larger trees. Grows as required.
+    private static final int INITIAL_CAPACITY = 1024;
+    //The default alphabet, which includes all "useful" ASCII according to http://www.asciitable.com/
+    public static final char TEXT_START_SYMBOL = '\t';
+    public static final int TEXT_ALPHA_CHARACTERS = 117;
+    //The alphabet of byte mode: every value a byte can take, so any file can be encoded. See forBytes.
+    public static final char BYTE_START_SYMBOL = 0;
+    public static final int BYTE_ALPHA_CHARACTERS = 256;
+    //Weights are halved when the head reaches this unless set otherwise, which only stops them overflowing
+    public static final int DEFAULT_RESCALE_LIMIT = Integer.MAX_VALUE;
+    //The characters of each symbol and how a symbol is numbered
+    private final Alphabet alphabet;
+    //The kind of tree, VITTER unless it is an FGKTree
+    private final EngineType engine;
     //EXPONENT and REMAINDER are explained in depth below. They are the maximum number of bits read at once.
     private final int EXPONENT;
     private final int REMAINDER;
-    /*This is the number of characters be should consider at once.
-     * eg: For a string "ab" if NUM_SYMBOLS = 1 we consider them "a" and "b", but
-     * for NUM_SYMBOLS = 2 we have only "ab"
+    /*
+     * Where encode(FileReader), encode(InputStream) and decode(InputStream) write: a file, only opened when one of
+     * them is called, or a stream given to the constructor. Encodings are written as packed bits, decodings as text.
+     * Both may be null for a tree only used in memory.
+     */
+    private String outputPath;
+    private OutputStream output;
+    /*
+     * The tree is held as a struct of arrays, a node being its position in the implicit numbering. The head is
+     * numbered 0, weights never increase along the numbering and the NYT node is always the last node. Swapping two
+     * nodes exchanges what hangs from their positions (children and symbol), so a moved subtree keeps its numbers
+     * and nothing is allocated per symbol.
+     * symbol[] holds the symbol number of a leaf, or NONE for internal nodes and the NYT node.
      */
-    private final int NUM_SYMBOLS;
-    //Used to write the output to file as a String representation of the binary.
-    private FileWriter output;
+    private int[] weight;
+    private int[] parent;
+    private int[] left;
+    private int[] right;
+    private int[] symbol;
+    private int size = 0;
     //This is the node is that current the NYT node in the tree
-    private Node currentNYT = NodeFactory.getNYTNode();
-    //This is the first node in the tree,
-    public Node head = currentNYT;
+    private int nyt = 0;
+    /*
+     * Nodes of equal weight are contiguous in the numbering and form a block, split in two (the internal nodes first)
+     * when splitBlocks is set. blockOf[i] is the block of node i, blockLeader[b] the lowest numbered node in block b
+     * and blockWeight[b] its weight. Unused blocks are kept on a stack so they can be handed out again.
+     * Vitter's update keeps internal nodes and leaves apart (see update), whereas FGK's swaps a node with whatever
+     * leads its weight, so splitBlocks is only clear for an FGKTree. It is fixed when the tree is created.
+     */
+    private final boolean splitBlocks;
+    private int[] blockOf;
+    private int[] blockLeader;
+    private int[] blockWeight;
+    private int[] freeBlocks;
+    private int freeBlockCount = 0;
+    private int blockCount = 0;
+    //Finds the leaf for a symbol number without searching the tree
+    private final SymbolIndex leaves;
     /*
-     * Used in order to maintain the position a node is in the tree,
-     * Can be updated dynamically.
-     * This is initalised with the head element already added.
-     * Note that new nodes get added to the start of the Linked List.
+     * Codes cached by writeEncoding. codes[n] holds the route to leaf n shifted left 6 bits, plus its length, and is
+     * only trusted when codeStamp[n] equals codeEpoch. The route to a position only changes when one of its ancestors
+     * is given new children by a swap, so a swap of two leaves costs nothing; otherwise the leaves below are cleared,
+     * or every code at once by moving to a new epoch if there are many of them.
      */
-    private LinkedList<Node> list = new LinkedList<Node>(){{ add(head); }};
+    private long[] codes;
+    private int[] codeStamp;
+    private int codeEpoch = 1;
+    private final int[] invalidateStack = new int[INVALIDATE_LIMIT + 2];
+    //Told what the tree does, see setMetrics
+    private TreeMetrics metrics = TreeMetrics.NONE;
+    //The weight of the head at which every weight is halved, see setRescaleLimit
+    private int rescaleLimit = DEFAULT_RESCALE_LIMIT;
+    //The snapshot the tree was created from, which reset returns it to, or null
+    private TreeSnapshot snapshot;
+    /*
+     * A view of the tree as Nodes, for callers that want to inspect it. view[i] shows node i. It is refreshed by
+     * add(String) and getList(); encoding, decoding and reset work on the arrays alone and leave it as it was.
+     */
+    private Node[] view = new Node[1];
+    //This is the first node in the tree,
+    public Node head = view[0] = NodeFactory.getNYTNode();
 
 
 
@@ -55,17 +123,59 @@ public class VTree{
         this(1);
     }
 
-    //Work for more than 1 symbol at once
+    //Work for more than 1 symbol at once. The output file is not opened until something is written to it.
     public VTree(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS, String output) throws IOException{
-        this.NUM_SYMBOLS = NUM_SYMBOLS;
-        this.START_SYMBOL = START_SYMBOL;
-        this.ALPHA_CHARACTERS = ALPHA_CHARACTERS;
-        ALPHA_SIZE = (int)Math.pow(ALPHA_CHARACTERS, NUM_SYMBOLS);
-        EXPONENT = calculateExponent(ALPHA_SIZE);
-        REMAINDER = calculateRemainder(ALPHA_SIZE, EXPONENT);
-        currentNYT.parent = head;
-        head.parent = null; //This **MUST** be after we assign the parent to current NYT.
-        this.output = new FileWriter(output);
+        this(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, output, EngineType.VITTER);
+    }
+
+    //For FGKTree, which writes to a file in the same way
+    VTree(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS, String output, EngineType engine){
+        this(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, (OutputStream)null, 0, engine);
+        this.outputPath = output;
+    }
+
+    /**
+     * Creates a tree that writes to a stream rather than a file
+     * @param NUM_SYMBOLS the number of characters in each symbol
+     * @param START_SYMBOL the first character in the alphabet
+     * @param ALPHA_CHARACTERS the number of characters in the alphabet
+     * @param output the stream encode(InputStream) and decode(InputStream) write to and close, or null for a tree
+     * only used in memory (eg: with encode(byte[]) or encode(InputStream, OutputStream))
+     */
+    public VTree(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS, OutputStream output){
+        this(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, output, 0);
+    }
+
+    /**
+     * Creates a tree that writes to a stream, with room for a number of nodes to begin with
+     * @param capacity the number of nodes the arrays start with, growing as needed, or 0 to allocate every node the
+     * alphabet can need when that is not too many. Models that keep many small trees (eg: ContextCoder) start small.
+     */
+    VTree(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS, OutputStream output, int capacity){
+        this(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS, output, capacity, EngineType.VITTER);
+    }
+
+    /**
+     * Creates a tree of a kind, see VTree(int, char, int, OutputStream, int)
+     * @param engine the kind of tree this is: FGK only for an FGKTree, whose update expects blocks of one weight
+     */
+    VTree(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS, OutputStream output, int capacity,
+          EngineType engine){
+        this.alphabet = new Alphabet(NUM_SYMBOLS, START_SYMBOL, ALPHA_CHARACTERS);
+        this.engine = engine;
+        this.splitBlocks = engine != EngineType.FGK;
+        EXPONENT = calculateExponent(alphabet.size);
+        REMAINDER = calculateRemainder(alphabet.size, EXPONENT);
+        leaves = new SymbolIndex(alphabet.size);
+        long nodes = 2L * alphabet.size - 1;
+        if (capacity > 0){
+            allocate(capacity);
+        }else {
+            allocate(nodes <= PREALLOCATE_LIMIT ? (int)nodes : INITIAL_CAPACITY);
+        }
+        newNode(NONE, NONE);
+        blockOf[0] = newBlock(0, 0);
+        this.output = output;
     }
 
     public VTree(int NUM_SYMBOLS, char START_SYMBOL, int ALPHA_CHARACTERS) throws IOException{
@@ -73,13 +183,62 @@ public class VTree{
     }
 
     public VTree(int NUM_SYMBOLS, String output) throws IOException{
-        this(NUM_SYMBOLS, '\t', 117, output); //Includes all "useful" ASCII according to http://www.asciitable.com/
+        this(NUM_SYMBOLS, TEXT_START_SYMBOL, TEXT_ALPHA_CHARACTERS, output);
     }
 
     public VTree(int NUM_SYMBOLS) throws IOException{
         this(NUM_SYMBOLS, "output.txt");
     }
 
+    /**
+     * Creates a tree in the state of a snapshot, with its alphabet and rescale limit, which is only used in memory.
+     * Starting from a snapshot of a tree trained on typical messages (see train) saves the escapes that would
+     * otherwise be sent for the first of each symbol, which is most of the cost of a short message. The snapshot is
+     * copied, never changed, so may be shared by any number of trees on any threads.
+     * @param snapshot the snapshot, of a VTree
+     * @throws IllegalArgumentException when the snapshot is of another kind of tree, see TreeSnapshot.newTree
+     */
+    public VTree(TreeSnapshot snapshot){
+        this(snapshot, EngineType.VITTER);
+    }
+
+    /**
+     * Creates a tree of a kind in the state of a snapshot of that kind, see VTree(TreeSnapshot)
+     */
+    VTree(TreeSnapshot snapshot, EngineType engine){
+        this(snapshot.numSymbols, snapshot.startSymbol, snapshot.alphaCharacters, (OutputStream)null, 0, engine);
+        if (snapshot.engine != engine){
+            throw new IllegalArgumentException("The snapshot is of a " + snapshot.engine + " tree, not " + engine);
+        }
+        setRescaleLimit(snapshot.rescaleLimit);
+        this.snapshot = snapshot;
+        reset();
+        refreshView();
+    }
+
+    /**
+     * Creates a tree for byte mode, where each character is a raw byte (0 to 255) and symbols are NUM_SYMBOLS bytes.
+     * Any file can be encoded and decodes to exactly the same bytes, provided its length is a multiple of
+     * NUM_SYMBOLS; otherwise the last symbol is padded with new lines, as in text mode. Use encode(InputStream) or
+     * encode(byte[]) rather than the String methods, which assume text.
+     * @param NUM_SYMBOLS the number of bytes in each symbol, at most 3
+     * @param output the file encodings and decodings are written to
+     * @return the tree
+     * @throws IOException when the output file can not be opened
+     */
+    public static VTree forBytes(int NUM_SYMBOLS, String output) throws IOException{
+        return new VTree(NUM_SYMBOLS, BYTE_START_SYMBOL, BYTE_ALPHA_CHARACTERS, output);
+    }
+
+    /**
+     * Creates a tree for byte mode (see forBytes(int, String)) that is only used in memory, so has no output file
+     * @param NUM_SYMBOLS the number of bytes in each symbol, at most 3
+     * @return the tree
+     */
+    public static VTree forBytes(int NUM_SYMBOLS){
+        return new VTree(NUM_SYMBOLS, BYTE_START_SYMBOL, BYTE_ALPHA_CHARACTERS, (OutputStream)null);
+    }
+
     /* Methods */
     /* Calculations */
     /*
@@ -94,9 +253,9 @@ public class VTree{
      * @return the exponent or 0 if x is less than 0.
      */
     private int calculateExponent(int x){
-        if (x<0) return 0;
-        double val = Math.log(x)/Math.log(2);
-        return (int)Math.floor(val);
+        if (x<=0) return 0;
+        //floor(log2(x)), exactly
+        return 31 - Integer.numberOfLeadingZeros(x);
     }
     /**
      * Calculates the difference between a difference x and 2^exponent.
@@ -107,49 +266,10 @@ public class VTree{
      */
     private int calculateRemainder(int x, int exponent){
         if (x<0) return 0;
-        return (int)(x - Math.pow(2,exponent));
+        return x - (1 << exponent);
     }
 
 
-    /**
-     * Detects the symbol from a given symbol number
-     * @param value the symbol number
-     * @param noSymbols the number of characters in each symbol
-     * @return the symbol detected
-     */
-    private String detectSymbol(int value, int noSymbols){
-        StringBuilder sb = new StringBuilder();
-        for (int i=noSymbols-1; i >= 0; i--){
-            int loops = 0;
-            while (value >= Math.pow(ALPHA_CHARACTERS, i)){
-                loops++;
-                value -= Math.pow(ALPHA_CHARACTERS, i);
-            }
-            //Special case. Treat new line as /n append that, do not actually take a new line.
-            //If this wasn't here is will take a new line. Odd.
-            if (loops == 0){
-                sb.append(START_SYMBOL);
-            }else {
-                sb.append((char) (START_SYMBOL + loops));
-            }
-        }
-        return sb.toString();
-    }
-
-    /**
-     * Detects the number in the alphabet that this symbol is
-     * @param s the string representation of the symbol
-     * @return the position in the alphabet
-     */
-    private int detectSymbolNumber(String s){
-        int number = 0;
-        for (int i =0; i<s.length(); i++){
-            //In effect this is arthm mod ALPHA_SIZE
-            //Recall we are counting from 0
-            number += Math.pow(ALPHA_CHARACTERS, s.length() - i - 1)*((int)s.charAt(i)-(int)START_SYMBOL);
-        }
-        return number;
-    }
     /**
      * Given a string representing a binary input, calculate its numerical representation
      * @param s the binary string
@@ -158,85 +278,92 @@ public class VTree{
     public int reverseBinary(String s){
         int val = 0;
         for (int i = 0; i<s.length(); i++){
-            if (s.charAt(i) == '1'){
-                //Observe that the last character is the least significant
-                val += (int)Math.pow(2,s.length() - 1 - i);
-            }
+            //Observe that the last character is the least significant
+            val = (val << 1) | ((s.charAt(i) == '1') ? 1 : 0);
         }
         return val;
     }
 
     /**
-     * Gets the binary representation for a number
-     * @param v the number
-     * @param bits the amount of bits required to store this number
-     * @return a String representing the binary of this number
+     * Writes the route to a node from root. To traverse from root 1 = go right, 0 = go left.
+     * Should **NOT** be NONE, or not exist in the tree.
+     * The route is gathered into a long, which is always long enough: a node at depth d needs a root weight of at
+     * least the d-th Fibonacci number, so an int weighted tree can never be 64 levels deep.
+     * Routes are cached per leaf (see codes), so a leaf whose route has not changed since it was last sent costs one
+     * lookup.
+     * @param n the node to traverse a route to
+     * @param out the BitWriter the route is written to
+     * @return the number of bits written
+     * @throws IOException when the route can not be written
      */
-    private String getBinary(int v, int bits){
-        StringBuilder sb = new StringBuilder();
-        for (int i =0; i<bits; i++){
-            if ((v&1) == 1){
-                sb.append('1');
-            }else{
-                sb.append('0');
-            }
-            v = v>>>1;
+    private int writeEncoding(int n, BitWriter out) throws IOException{
+        if (n == 0){ //special case
+            out.writeBit(0);
+            return 1;
         }
-        return sb.reverse().toString();
-    }
-
-    /**
-     * Gets the route to a node from root. To traverse from root "1" = go right, "0" = go left.
-     * Should **NOT** be null, or not exist in the tree.
-     * @param n the node to traverse a route to
-     * @return the route to this node from root
-     */
-    private String getEncoding(Node n){
-        if (n == head) return "0"; //special case
-        StringBuilder sb = new StringBuilder();
-        while (n != head){
-            if (isOnRight(n)){
-                sb.append("1");
-            }else{
-                sb.append("0");
+        if (codeStamp[n] == codeEpoch){
+            int length = (int)codes[n] & 63;
+            out.write(codes[n] >>> 6, length);
+            return length;
+        }
+        int leaf = n;
+        long route = 0;
+        int length = 0;
+        while (n != 0){
+            int p = parent[n];
+            if (right[p] == n){
+                route |= 1L << length;
             }
-            n = n.parent;
+            length++;
+            n = p;
         }
-        return sb.reverse().toString();
+        codes[leaf] = (route << 6) | length;
+        codeStamp[leaf] = codeEpoch;
+        out.write(route, length);
+        return length;
     }
 
 
     /* Getters, Setters & Checkers */
 
     /**
-     * Retrieves the linked list currently being used to maintain the invariant (please do not update this), otherwise
-     * unknown behaviour will occur.
-     * @return the linked list holding the index of each node
+     * Retrieves the nodes in order of their implicit numbering, lowest weight (the NYT node) first and the head last.
+     * This is a copy, updating it has no effect on the tree.
+     * @return a linked list holding every node of the tree
      */
     public LinkedList<Node> getList(){
+        refreshView();
+        LinkedList<Node> list = new LinkedList<>();
+        for (int i = 0; i < size; i++){
+            list.addFirst(view[i]);
+        }
         return list;
     }
 
     /**
-     * The block deeper into the LinkedList with a different weight or different "type" (eg leaf or internal).
-     * @return the next block or the head node if no such block exists
+     * The node a node should be swapped with before its weight is incremented by FGK's update (see FGKTree): the
+     * highest numbered node of the same weight, excluding the head and the node's parent.
+     * @param n a node of the current view of the tree
+     * @return the node to swap with, which may be n itself, or null if there is no such node
      */
     public Node getNextBlock(Node n){
-        Node currentNextBlock = null;
-        for (Node b: list){
-            if (b.getWeight() == n.getWeight() && b != head && b!=n.parent) currentNextBlock = b;
-        }
-        return currentNextBlock;
+        int b = getNextBlock(n.number);
+        return (b == NONE) ? null : view[b];
     }
 
     /**
-     * Returns whether a node is on the right side of its parent
-     * @param n the node to be checked
-     * @return true the node is on the right side of its parent, false otherwise (and false if null)
+     * Internal version of getNextBlock(Node), for FGKTree
+     * @param n the node
+     * @return the node to swap with, which may be n itself, or NONE if there is no such node
      */
-    private boolean isOnRight(Node n){
-        if (n == null) return false;
-        return n.parent.right == n;
+    int getNextBlock(int n){
+        int leader = blockLeader[blockOf[n]];
+        if (leader == 0 || leader == parent[n]){
+            //The parent shares the weight of n only when the sibling of n is the NYT node
+            leader++;
+            if (leader >= size || blockOf[leader] != blockOf[n]) return NONE;
+        }
+        return leader;
     }
 
     /**
@@ -250,287 +377,1212 @@ public class VTree{
 
     /**
      * Finds the correct node in the VTree for a specific symbol
-     * @param c the symbol to be found
+     * @param symbol the symbol number of the symbol to be found
      * @return the node for this character, or the NYT node if unfound
      */
-    private Node findNode(String c){
-        for (Node n: list){
-            if (n.getValue().equals(c)) return n;
-        }
-        return currentNYT;
+    int findNode(int symbol){
+        int n = leaves.get(symbol);
+        return (n == NONE) ? nyt : n;
     }
 
     /**
-     * Adds a character c to a node which is attached to the right of a now internal node, whilst maintaining invariant,
-     * which includes updating the current NYT node
+     * Turns the NYT node into an internal node with a new NYT node on the left and the new symbol on the right,
+     * whilst maintaining invariant, which includes updating the current NYT node and the symbol index. Every node
+     * is left with weight 0, in the block of weight 0 the old NYT node was alone in, except that when blocks are
+     * split the old NYT node, now internal, is given a block of its own and the new leaf leads the block.
      * @param n the NYT node
-     * @param s the symbol to be added
+     * @param s the symbol number to be added
+     */
+    void addToZeroNode(int n, int s){
+        ensureCapacity(size + 2);
+        right[n] = newNode(n, s);
+        left[n] = newNode(n, NONE);
+        int b = blockOf[n];
+        blockOf[right[n]] = b;
+        blockOf[left[n]] = b;
+        if (splitBlocks){
+            blockLeader[b] = right[n];
+            blockOf[n] = newBlock(0, n);
+        }
+        leaves.put(s, right[n]);
+        nyt = left[n];
+    }
+
+    /**
+     * Creates a leaf of weight 0 with the next number
+     * @param p its parent
+     * @param s its symbol number, or NONE
+     * @return the new node
      */
-    private void addToZeroNode(Node n, String s){
-        NodeFactory.unseenCharacterNode(n, s);
-        addParentAndChildrenToList(n);
-        currentNYT = n.left;
+    private int newNode(int p, int s){
+        int n = size++;
+        weight[n] = 0;
+        parent[n] = p;
+        left[n] = NONE;
+        right[n] = NONE;
+        symbol[n] = s;
+        codeStamp[n] = 0;
+        return n;
     }
 
     /**
-     * Adds a node and its children to the list of nodes.
-     * Maintains the invariant, as such: 0 - left node, 1 - right node, 2 - parent node
-     * @param n the parent node
+     * Allocates every array for a number of nodes
+     * @param capacity the number of nodes
      */
-    private void addParentAndChildrenToList(Node n){
-        list.addFirst(n.right);
-        list.addFirst(n.left);
+    private void allocate(int capacity){
+        weight = new int[capacity];
+        parent = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        symbol = new int[capacity];
+        blockOf = new int[capacity];
+        blockLeader = new int[capacity];
+        blockWeight = new int[capacity];
+        freeBlocks = new int[capacity];
+        codes = new long[capacity];
+        codeStamp = new int[capacity];
+    }
+
+    /**
+     * Grows the arrays so they can hold a number of nodes. Only large alphabets, which are not allocated in full up
+     * front, ever need to grow.
+     * @param capacity the number of nodes required
+     */
+    private void ensureCapacity(int capacity){
+        if (capacity <= weight.length) return;
+        int newCapacity = Math.max(capacity, weight.length * 2);
+        weight = Arrays.copyOf(weight, newCapacity);
+        parent = Arrays.copyOf(parent, newCapacity);
+        left = Arrays.copyOf(left, newCapacity);
+        right = Arrays.copyOf(right, newCapacity);
+        symbol = Arrays.copyOf(symbol, newCapacity);
+        blockOf = Arrays.copyOf(blockOf, newCapacity);
+        blockLeader = Arrays.copyOf(blockLeader, newCapacity);
+        blockWeight = Arrays.copyOf(blockWeight, newCapacity);
+        freeBlocks = Arrays.copyOf(freeBlocks, newCapacity);
+        codes = Arrays.copyOf(codes, newCapacity);
+        codeStamp = Arrays.copyOf(codeStamp, newCapacity);
+    }
+
+    /**
+     * Creates a block
+     * @param w the weight of every node in the block
+     * @param leader the number of its leader
+     * @return the block
+     */
+    private int newBlock(int w, int leader){
+        int b = (freeBlockCount > 0) ? freeBlocks[--freeBlockCount] : blockCount++;
+        blockWeight[b] = w;
+        blockLeader[b] = leader;
+        return b;
+    }
+
+    /**
+     * Brings the Node view up to date with the arrays, reusing the Nodes already handed out so that references
+     * such as head stay valid.
+     */
+    private void refreshView(){
+        if (view.length < size) view = Arrays.copyOf(view, weight.length);
+        for (int i = 0; i < size; i++){
+            if (view[i] == null) view[i] = NodeFactory.getNYTNode();
+        }
+        for (int i = 0; i < size; i++){
+            Node v = view[i];
+            v.number = i;
+            v.show(weight[i], (symbol[i] == NONE) ? "" : alphabet.detectSymbol(symbol[i]),
+                    (left[i] == NONE) ? null : view[left[i]],
+                    (right[i] == NONE) ? null : view[right[i]],
+                    (parent[i] == NONE) ? null : view[parent[i]]);
+        }
     }
 
 
     /* Maintenance */
 
     /**
-     * Given two nodes it swaps their positions. Does not change their memory locations or logical addresses.
+     * Given two nodes of the same weight it swaps their positions, by exchanging their children and symbols.
+     * The numbering and block structure are unchanged.
      * @param a a node to be swapped
      * @param b the other node to be swapped
      */
-    private void swap(Node a, Node b){
+    void swap(int a, int b){
         if (a==b) return;
-        boolean aOnRight = a.parent.right == a;
-        boolean bOnRight = b.parent.right == b;
-        Node bParent = b.parent;
-        //Update their parent nodes
-        if (aOnRight){
-            a.parent.right = b;
-        }else{
-            a.parent.left = b;
-        }
-        if (bOnRight){
-            b.parent.right = a;
-        }else{
-            b.parent.left = a;
+        metrics.swap();
+        int t = left[a]; left[a] = left[b]; left[b] = t;
+        t = right[a]; right[a] = right[b]; right[b] = t;
+        t = symbol[a]; symbol[a] = symbol[b]; symbol[b] = t;
+        adopt(a);
+        adopt(b);
+        invalidateCodes(a);
+        invalidateCodes(b);
+    }
+
+    /**
+     * Points the children of a node, or the symbol index if it is a leaf, back at the node after a swap
+     * @param n the node that has just been given new contents
+     */
+    private void adopt(int n){
+        if (left[n] != NONE){
+            parent[left[n]] = n;
+            parent[right[n]] = n;
+        }else if (symbol[n] != NONE){
+            leaves.put(symbol[n], n);
         }
-        //Update so they have the correct parents
-        b.parent = a.parent;
-        a.parent = bParent;
     }
 
     /**
-     * Resorts the list full the root node to maintain the invariant
+     * Clears the cached codes of the nodes below a node, after the node has been given new children. Past
+     * INVALIDATE_LIMIT descendants it is cheaper to start a new epoch, which clears every cached code.
+     * @param n the node that has just been given new contents
      */
-    private void resortList(){
-        list = new LinkedList<>();
-        list.add(head);
-        sort(head);
+    private void invalidateCodes(int n){
+        if (left[n] == NONE) return;
+        int[] stack = invalidateStack;
+        int top = 0;
+        stack[top++] = left[n];
+        stack[top++] = right[n];
+        for (int visited = 0; top > 0; visited++){
+            if (visited == INVALIDATE_LIMIT){
+                clearCodes();
+                return;
+            }
+            //Internal nodes are cleared too, as a later swap may turn them into leaves
+            int m = stack[--top];
+            codeStamp[m] = 0;
+            if (left[m] != NONE){
+                stack[top++] = left[m];
+                stack[top++] = right[m];
+            }
+        }
     }
 
     /**
-     * Sorts the list to maintain the ordering of the tree and the invariant
-     * @param n the node to be sorted from
+     * Clears every cached code by starting a new epoch
      */
-    private void sort(Node n){
-        if (n.right != null){
-            list.addFirst(n.right);
+    private void clearCodes(){
+        if (++codeEpoch == Integer.MAX_VALUE){
+            //Start again rather than let old codes match a reused epoch
+            Arrays.fill(codeStamp, 0);
+            codeEpoch = 1;
         }
-        if (n.left != null){
-            list.addFirst(n.left);
+    }
+
+    /**
+     * Increments the weight of the leader of a block, moving it into the block above it.
+     * @param i a node which leads its block
+     */
+    void incrementLeader(int i){
+        int b = blockOf[i];
+        weight[i]++;
+        metrics.increment();
+        if (i + 1 < size && blockOf[i + 1] == b){
+            blockLeader[b] = i + 1;
+        }else {
+            freeBlocks[freeBlockCount++] = b;
         }
-        if (n.right != null){
-            sort(n.right);
+        joinBlockAbove(i);
+    }
+
+    /**
+     * Puts a node that has just had its weight incremented into the block numbered just before it, or a new block
+     * of its own if that block has a different weight.
+     * @param i the node
+     */
+    private void joinBlockAbove(int i){
+        if (i > 0 && sameBlock(i - 1, i)){
+            blockOf[i] = blockOf[i - 1];
+        }else {
+            blockOf[i] = newBlock(weight[i], i);
         }
-        if (n.left != null){
-            sort(n.left);
+    }
+
+    /**
+     * @return true if two nodes numbered one after the other belong in the same block: they have the same weight,
+     * and are both leaves or both internal nodes when blocks are split
+     */
+    private boolean sameBlock(int i, int j){
+        return weight[i] == weight[j] && (isLeaf(i) == isLeaf(j) || !splitBlocks);
+    }
+
+
+    /**
+     * Returns the tree to the state it was created in, empty or that of the snapshot it was created from, so it can
+     * encode or decode another message, without allocating: the arrays and symbol index are kept and reused.
+     * Settings (the output, metrics and rescale limit) are kept too. Like encoding, it leaves the Node view as it was.
+     */
+    @Override
+    public void reset(){
+        if (snapshot != null){
+            copyFrom(snapshot.tree);
+            return;
         }
+        clearCodes();
+        leaves.clear();
+        size = 0;
+        freeBlockCount = 0;
+        blockCount = 0;
+        newNode(NONE, NONE);
+        blockOf[0] = newBlock(0, 0);
+        nyt = 0;
     }
 
 
     /* Encoding, Decoding and Tree creation */
 
     /**
-     * Adds a string to the tree. Does not encode.
+     * Adds a string to the tree. Does not encode. The Node view (eg: head) is refreshed afterwards, which costs time
+     * proportional to the size of the tree.
      * @param s the String to be added
      */
+    @Override
     public void add(String s){
         if (s == null) return;
-        add(findNode(s),s);
+        int symbol = alphabet.detectSymbolNumber(s);
+        add(findNode(symbol), symbol);
+        refreshView();
+    }
+
+    /**
+     * Adds a symbol to a specific node.
+     * @param n the node representing this symbol. **MUST** be the correct node.
+     * @param s the symbol number.
+     */
+    void add(int n, int s) {
+        update(n, s);
+        if (weight[0] >= rescaleLimit) rescale();
+    }
+
+    /**
+     * Vitter's Algorithm Lambda, with the recursion of the original replaced by a loop up to the head. It keeps
+     * Vitter's invariant: blocks hold nodes of one weight and one kind, and the internal nodes of each weight are
+     * numbered just before its leaves. Leaves then slide past internal nodes as their weights grow, rather than being
+     * swapped with whatever leads their block, which keeps the tree at the least height and sum of code lengths among
+     * Huffman trees for its weights. FGKTree replaces it with FGK's update.
+     * @param n the node representing this symbol
+     * @param s the symbol number
+     */
+    void update(int n, int s){
+        int leafToIncrement = NONE;
+        int q = n;
+        if (q == nyt){
+            //The new leaf leads the leaves of weight 0. The old NYT node is an internal node of weight 0, alone in its
+            //block, and is incremented first by the loop below.
+            addToZeroNode(q, s);
+            leafToIncrement = right[q];
+        }else {
+            int leader = blockLeader[blockOf[q]];
+            swap(leader, q);
+            q = leader;
+            if (parent[q] == parent[nyt]){
+                //The parent of q has the same weight, so it is incremented first and q last
+                leafToIncrement = q;
+                q = parent[q];
+            }
+        }
+        while (q != NONE){
+            q = slideAndIncrement(q);
+        }
+        if (leafToIncrement != NONE) slideAndIncrement(leafToIncrement);
+    }
+
+    /**
+     * Increments the weight of the leader of a block. A leaf numbered just after the internal nodes of its weight, or
+     * an internal node numbered just after the leaves of one more than its weight, first slides past that block,
+     * which keeps the invariant (see update).
+     * @param p a node which leads its block
+     * @return the node to increment next: the new parent of a leaf, or the former parent of an internal node
+     */
+    private int slideAndIncrement(int p){
+        int wt = weight[p];
+        int fp = parent[p];
+        if (p > 0){
+            int b = blockOf[p - 1];
+            boolean leaf = isLeaf(p);
+            boolean leafBlock = isLeaf(blockLeader[b]);
+            if (leaf ? !leafBlock && blockWeight[b] == wt : leafBlock && blockWeight[b] == wt + 1){
+                int l = slide(p, b);
+                return leaf ? parent[l] : fp;
+            }
+        }
+        incrementLeader(p);
+        return fp;
+    }
+
+    /**
+     * Moves the contents of the leader of a block ahead of the block numbered just before it, which moves back one
+     * place, and increments the weight of what was moved
+     * @param p a node which leads its block
+     * @param b the block numbered just before it
+     * @return the node the contents of p were moved to
+     */
+    private int slide(int p, int b){
+        metrics.swap();
+        metrics.increment();
+        int l = blockLeader[b];
+        int movedLeft = left[p];
+        int movedRight = right[p];
+        int movedSymbol = symbol[p];
+        System.arraycopy(left, l, left, l + 1, p - l);
+        System.arraycopy(right, l, right, l + 1, p - l);
+        System.arraycopy(symbol, l, symbol, l + 1, p - l);
+        left[l] = movedLeft;
+        right[l] = movedRight;
+        symbol[l] = movedSymbol;
+        weight[l] = weight[p] + 1;
+        weight[p] = blockWeight[b];
+        for (int i = l; i <= p; i++){
+            adopt(i);
+            invalidateCodes(i);
+        }
+        //p leaves its block, b moves back one place and l joins the block before it
+        int bp = blockOf[p];
+        if (p + 1 < size && blockOf[p + 1] == bp){
+            blockLeader[bp] = p + 1;
+        }else {
+            freeBlocks[freeBlockCount++] = bp;
+        }
+        blockOf[p] = b;
+        blockLeader[b] = l + 1;
+        joinBlockAbove(l);
+        return l;
     }
 
     /**
-     * Adds a String to a specific node.
-     * @param n the node representing this String. **MUST** be the correct node.
-     * @param s the String itself.
+     * Halves the weight of every symbol, rounding up so none is forgotten, and rebuilds the tree for the new weights.
+     * The leaves are already in order of weight when read from the end of the numbering, and everything depends only
+     * on the tree, so an encoder and decoder rescale identically.
      */
-    private void add(Node n, String s) {
-        //Manage unseen characters
-        if (isNYTNode(n)){
-            addToZeroNode(n,s); //note that n is the parent of the newly created symbol
-            n.right.incrementWeight();
-            //Special case
-            if (n == head) {
-                n.incrementWeight();
-            }else { //normal case
-                adapt(n);
+    private void rescale(){
+        metrics.rescale();
+        int count = (size - 1) / 2;
+        int[] symbols = new int[count];
+        int[] weights = new int[count];
+        int k = 0;
+        for (int i = size - 1; i >= 0; i--){
+            if (left[i] == NONE && i != nyt){
+                symbols[k] = symbol[i];
+                weights[k] = (weight[i] + 1) / 2;
+                k++;
             }
-        }else{ //We have seen this value before
-            adapt(n);
         }
+        rebuild(symbols, weights, count);
     }
 
     /**
-     * Internal adaption method. Updates the tree to maintain the invariant.
-     * @param n node which is the frame of reference for this adaption.
+     * Replaces the tree with one built for some leaves by Huffman's algorithm, run with two queues: one holds the NYT
+     * node and then the leaves, and the other the internal nodes in the order they are made, which is also in order
+     * of weight. Numbering the nodes in the reverse of the order they were taken gives weights that never increase
+     * along the numbering with siblings together. When the fronts tie the leaf is taken, so the internal nodes of
+     * each weight are numbered before its leaves and the tree has the least height of any Huffman tree for the
+     * weights, as Vitter's invariant requires; FGK's update instead expects the parent of the NYT node just before
+     * its sibling, so for it the internal node is taken.
+     * @param leafSymbols the symbol numbers of the leaves
+     * @param leafWeights their weights, which are above 0 and never decrease
+     * @param count the number of leaves
      */
-    private void adapt(Node n){
-        if (n == null) return;
-        Node block = getNextBlock(n);
-        if (block != null && block != head && n.parent != null){
-            swap(block,n);
-            resortList(); //we only need to resort list upon a swap
+    private void rebuild(int[] leafSymbols, int[] leafWeights, int count){
+        int n = 2 * count + 1;
+        ensureCapacity(n);
+        clearCodes();
+        leaves.clear();
+        int leafCount = count + 1;
+        int[] w = new int[n];
+        int[] s = new int[n];
+        int[] l = new int[n];
+        int[] r = new int[n];
+        //Nodes 0 to leafCount - 1 are the NYT node and the leaves, in order of weight; internal nodes follow
+        w[0] = 0;
+        s[0] = NONE;
+        l[0] = NONE;
+        for (int k = 0; k < count; k++){
+            w[k + 1] = leafWeights[k];
+            s[k + 1] = leafSymbols[k];
+            l[k + 1] = NONE;
+        }
+        int made = leafCount;
+        int[] order = new int[n];
+        int taken = 0;
+        int nextLeaf = 0;
+        int nextInternal = leafCount;
+        while (taken < n - 1){
+            for (int k = 0; k < 2; k++){
+                if (nextInternal < made && (nextLeaf == leafCount || w[nextInternal] < w[nextLeaf]
+                        || (w[nextInternal] == w[nextLeaf] && !splitBlocks))){
+                    order[taken++] = nextInternal++;
+                }else {
+                    order[taken++] = nextLeaf++;
+                }
+            }
+            //The first taken is lighter, so it is numbered after the second and becomes the left child
+            l[made] = order[taken - 2];
+            r[made] = order[taken - 1];
+            w[made] = w[l[made]] + w[r[made]];
+            s[made] = NONE;
+            made++;
+        }
+        order[taken] = made - 1;
+
+        int[] position = new int[n];
+        for (int j = 0; j < n; j++){
+            position[order[j]] = n - 1 - j;
+        }
+        size = n;
+        freeBlockCount = 0;
+        blockCount = 0;
+        for (int j = n - 1; j >= 0; j--){
+            int node = order[j];
+            int i = position[node];
+            weight[i] = w[node];
+            symbol[i] = s[node];
+            if (l[node] == NONE){
+                left[i] = right[i] = NONE;
+                if (s[node] == NONE){
+                    nyt = i;
+                }else {
+                    leaves.put(s[node], i);
+                }
+            }else {
+                left[i] = position[l[node]];
+                right[i] = position[r[node]];
+                parent[left[i]] = parent[right[i]] = i;
+            }
+            blockOf[i] = (i > 0 && sameBlock(i - 1, i)) ? blockOf[i - 1] : newBlock(weight[i], i);
+        }
+        parent[0] = NONE;
+    }
+
+    /**
+     * Makes this tree a copy of another for the same alphabet, reusing its arrays
+     * @param t the tree to copy, which is only read
+     */
+    private void copyFrom(VTree t){
+        ensureCapacity(t.size);
+        clearCodes();
+        leaves.clear();
+        System.arraycopy(t.weight, 0, weight, 0, t.size);
+        System.arraycopy(t.parent, 0, parent, 0, t.size);
+        System.arraycopy(t.left, 0, left, 0, t.size);
+        System.arraycopy(t.right, 0, right, 0, t.size);
+        System.arraycopy(t.symbol, 0, symbol, 0, t.size);
+        System.arraycopy(t.blockOf, 0, blockOf, 0, t.size);
+        System.arraycopy(t.blockLeader, 0, blockLeader, 0, t.blockCount);
+        System.arraycopy(t.blockWeight, 0, blockWeight, 0, t.blockCount);
+        System.arraycopy(t.freeBlocks, 0, freeBlocks, 0, t.freeBlockCount);
+        size = t.size;
+        nyt = t.nyt;
+        blockCount = t.blockCount;
+        freeBlockCount = t.freeBlockCount;
+        for (int i = 0; i < size; i++){
+            if (symbol[i] != NONE) leaves.put(symbol[i], i);
+        }
+    }
+
+    /**
+     * Lists the leaves of the tree, except the NYT node, in order of weight and then of symbol number. This order
+     * does not depend on the shape of the tree, only on the weights.
+     * @param frequencies added to the weight of each symbol, which makes symbols with a frequency above 0 leaves;
+     * frequencies[s] is for symbol number s
+     * @return the weight of each leaf shifted left 32 bits plus its symbol number
+     */
+    private long[] sortedLeaves(int[] frequencies){
+        if (frequencies.length > alphabet.size){
+            throw new IllegalArgumentException("There are more frequencies than symbols in the alphabet");
+        }
+        long[] keys = new long[(size - 1) / 2 + frequencies.length];
+        long total = 0;
+        int k = 0;
+        for (int i = 0; i < size; i++){
+            if (left[i] == NONE && i != nyt){
+                long w = (long)weight[i] + ((symbol[i] < frequencies.length) ? frequencies[symbol[i]] : 0);
+                keys[k++] = (w << 32) | symbol[i];
+                total += w;
+            }
+        }
+        for (int s = 0; s < frequencies.length; s++){
+            if (frequencies[s] < 0) throw new IllegalArgumentException("Frequencies can not be negative");
+            if (frequencies[s] > 0 && leaves.get(s) == NONE){
+                keys[k++] = ((long)frequencies[s] << 32) | s;
+                total += frequencies[s];
+            }
+        }
+        if (total >= Integer.MAX_VALUE) throw new IllegalArgumentException("The frequencies are too large");
+        keys = Arrays.copyOf(keys, k);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Teaches the tree a corpus, as if it had been encoded but without writing anything, so that messages like it
+     * are encoded in fewer bits. A last part symbol is ignored. The decoder must be taught the same, which is easiest
+     * with a snapshot.
+     * @param corpus the characters of the corpus
+     */
+    public void train(byte[] corpus){
+        int number = 0;
+        int length = 0;
+        for (byte b : corpus){
+            number = alphabet.extendSymbolNumber(number, (char)(b & 0xFF));
+            if (++length == alphabet.numSymbols){
+                add(findNode(number), number);
+                number = 0;
+                length = 0;
+            }
         }
-        n.incrementWeight();
-        adapt(n.parent);
+    }
+
+    /**
+     * Adds a table of frequencies to the weights of the tree and rebuilds it, so that symbols with a frequency
+     * above 0 are no longer new. The decoder must be taught the same, which is easiest with a snapshot.
+     * @param frequencies frequencies[s] is added to the weight of symbol number s, the number of a symbol being its
+     * characters (less START_SYMBOL) read as a number in base ALPHA_CHARACTERS, first character first. For symbols
+     * of one character that is frequencies[c - START_SYMBOL].
+     */
+    public void train(int[] frequencies){
+        long[] keys = sortedLeaves(frequencies);
+        int[] symbols = new int[keys.length];
+        int[] weights = new int[keys.length];
+        for (int i = 0; i < keys.length; i++){
+            symbols[i] = (int)keys[i];
+            weights[i] = (int)(keys[i] >>> 32);
+        }
+        rebuild(symbols, weights, keys.length);
+        while (weight[0] >= rescaleLimit) rescale();
+    }
+
+    /**
+     * Captures the weights of this tree, eg: once it has been trained, so that other trees can start from them. The
+     * snapshot is rebuilt from the weights alone, so it and a copy read back with TreeSnapshot.read start trees in
+     * exactly the same state.
+     * @return the snapshot
+     */
+    public TreeSnapshot snapshot(){
+        long[] keys = sortedLeaves(new int[0]);
+        int[] symbols = new int[keys.length];
+        int[] weights = new int[keys.length];
+        for (int i = 0; i < keys.length; i++){
+            symbols[i] = (int)keys[i];
+            weights[i] = (int)(keys[i] >>> 32);
+        }
+        return new TreeSnapshot(engine, alphabet.numSymbols, alphabet.startSymbol, alphabet.alphaCharacters,
+                rescaleLimit, symbols, weights);
+    }
+
+    /**
+     * Builds a tree for a snapshot
+     * @param symbols the symbol numbers of the leaves
+     * @param weights their weights, which are above 0 and never decrease
+     * @throws IllegalArgumentException when the leaves are not valid for this tree
+     */
+    void prime(int[] symbols, int[] weights){
+        long total = 0;
+        for (int i = 0; i < symbols.length; i++){
+            if (symbols[i] < 0 || symbols[i] >= alphabet.size || weights[i] < 1
+                    || (i > 0 && weights[i] < weights[i - 1])
+                    || (i > 0 && weights[i] == weights[i - 1] && symbols[i] <= symbols[i - 1])){
+                throw new IllegalArgumentException("The leaves are not in order or not in the alphabet");
+            }
+            total += weights[i];
+        }
+        if (total >= rescaleLimit) throw new IllegalArgumentException("The weights reach the rescale limit");
+        rebuild(symbols, weights, symbols.length);
     }
 
     /**
      * Generate the encoding for a sequence of characters (which will be converted to a String) read in from a File.
-     * Output is written to a file determined by the constructor.
+     * Output is written as packed bits to a file determined by the constructor.
      * @param r the FileReader with the file open.
      * @throws IOException when there is difficulty reading from the file or writing to file
      * (eg file has already been closed)
      */
     public void encode(FileReader r) throws IOException{
-        BufferedReader br = new BufferedReader(r);
-        StringBuilder sb = new StringBuilder();
-        String line = br.readLine();
-        while (line !=null){
-            sb.append(line);
-            sb.append("\n");
-            line = br.readLine();
-        }
-        sb.deleteCharAt(sb.length() - 1); //delete the last \n
-        output.append(encode(sb.toString()));
+        OutputStream output = openOutput();
+        //The file is encoded a buffer at a time, so memory use does not depend on its size
+        StreamEncoder encoder = new StreamEncoder(this);
+        char[] chars = new char[StreamEncoder.BUFFER_SIZE];
+        byte[] bytes = new byte[StreamEncoder.BUFFER_SIZE];
+        int read = r.read(chars);
+        while (read >= 0){
+            for (int i = 0; i < read; i++){
+                bytes[i] = (byte)chars[i];
+            }
+            encoder.setInput(bytes, 0, read);
+            encoder.encode(output);
+            read = r.read(chars);
+        }
+        encoder.finish();
+        encoder.encode(output);
         output.close();
-        br.close();
+        r.close();
+    }
+
+    /**
+     * Generates the encoding for a stream, each byte being one character. Unlike encode(FileReader) nothing is
+     * decoded as text, so this is the way to encode binary files in byte mode.
+     * Output is written as packed bits to a file determined by the constructor.
+     * @param in the stream with the file open
+     * @throws IOException when there is difficulty reading the stream or writing to file
+     */
+    public void encode(InputStream in) throws IOException{
+        OutputStream output = openOutput();
+        encode(in, output);
+        output.close();
+        in.close();
+    }
+
+    /**
+     * Generates the encoding for a stream, each byte being one character, and writes it as packed bits to another.
+     * Neither stream is closed.
+     * @param in the stream to be encoded, read to its end
+     * @param out the stream the encoding is written to
+     * @throws IOException when there is difficulty reading or writing either stream
+     */
+    @Override
+    public void encode(InputStream in, OutputStream out) throws IOException{
+        StreamEncoder encoder = new StreamEncoder(this);
+        byte[] bytes = new byte[StreamEncoder.BUFFER_SIZE];
+        int read = in.read(bytes);
+        while (read >= 0){
+            encoder.setInput(bytes, 0, read);
+            encoder.encode(out);
+            read = in.read(bytes);
+        }
+        encoder.finish();
+        encoder.encode(out);
+    }
+
+    /**
+     * Generates the encoding for a channel, each byte being one character, and writes it as packed bits to another.
+     * A large file is memory-mapped rather than read, and the BitWriter packs the output straight into a direct buffer
+     * that is written to the channel, so the bytes are not copied between buffers on the way. Neither channel is
+     * closed.
+     * @param in the channel to be encoded, read to its end
+     * @param out the channel the encoding is written to
+     * @throws IOException when there is difficulty reading or writing either channel
+     */
+    @Override
+    public void encode(ReadableByteChannel in, WritableByteChannel out) throws IOException{
+        StreamEncoder encoder = new StreamEncoder(this, out);
+        ChannelInput input = new ChannelInput(in);
+        for (ByteBuffer piece = input.next(); piece != null; piece = input.next()){
+            encoder.setInput(piece);
+            encoder.encode();
+        }
+        encoder.finish();
+        encoder.encode();
+    }
+
+    /**
+     * Generates the encoding for some bytes, each byte being one character, without touching the output file.
+     * @param data the bytes to be encoded
+     * @return the encoding as packed bits, which decode(byte[]) reverses
+     */
+    @Override
+    public byte[] encode(byte[] data){
+        return encode(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Generates the encoding for the remaining bytes of a buffer, each byte being one character, without touching the
+     * output file. The buffer's position is moved to its limit.
+     * @param data the bytes to be encoded
+     * @return the encoding as packed bits, which decode(byte[]) reverses
+     */
+    @Override
+    public byte[] encode(ByteBuffer data){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.remaining() / 2 + 16);
+        StreamEncoder encoder = new StreamEncoder(this);
+        try {
+            encoder.setInput(data);
+            encoder.encode(bytes);
+            encoder.finish();
+            encoder.encode(bytes);
+        }catch (IOException e){
+            //In memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
     }
 
     /**
      * Generates the encoding for a specific String of characters.
      * @param s the String to be encoded.
-     * @return the encoding generated by this data structure
+     * @return the encoding generated by this data structure, as a String of '0' and '1' characters
      */
     public String encode(String s){
-        //Add new lines to make it a length we can manage. This does affect the encoding.
-        while ((s.length() % NUM_SYMBOLS) != 0){
-            s = s +"\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            BitWriter bw = new BitWriter(bytes);
+            encode(s, bw);
+            bw.finish();
+            BitReader br = new BitReader(new ByteArrayInputStream(bytes.toByteArray()));
+            StringBuilder sb = new StringBuilder();
+            int bit = br.readBit();
+            while (bit >= 0){
+                sb.append(bit == 1 ? '1' : '0');
+                bit = br.readBit();
+            }
+            return sb.toString();
+        }catch (IOException e){
+            //In memory streams do not fail
+            throw new UncheckedIOException(e);
         }
-        StringBuilder sb = new StringBuilder();
-        for (int i =0; i<s.length(); i += NUM_SYMBOLS){
-            String input = s.substring(i, i+ NUM_SYMBOLS);
-            sb.append(encode(input, NUM_SYMBOLS));
+    }
+
+    /**
+     * Generates the encoding for a specific String of characters, writing it as packed bits.
+     * The caller is responsible for finishing the BitWriter.
+     * @param s the String to be encoded.
+     * @param out the BitWriter the encoding is written to
+     * @throws IOException when the encoding can not be written
+     */
+    public void encode(String s, BitWriter out) throws IOException{
+        CodingEvent event = CodingEvent.start();
+        long start = System.nanoTime();
+        long startBits = out.getBitCount();
+        //Symbol numbers are built a character at a time, as StreamEncoder does
+        int number = 0;
+        int length = 0;
+        for (int i = 0; i < s.length(); i++){
+            number = alphabet.extendSymbolNumber(number, s.charAt(i));
+            if (++length == alphabet.numSymbols){
+                encodeSymbol(number, out);
+                number = 0;
+                length = 0;
+            }
+        }
+        if (length > 0){
+            //Add new lines to make it a length we can manage. This does affect the encoding.
+            while (length++ < alphabet.numSymbols){
+                number = alphabet.extendSymbolNumber(number, '\n');
+            }
+            encodeSymbol(number, out);
         }
-        return sb.toString();
+        metrics.encodeTime(System.nanoTime() - start);
+        int n = alphabet.numSymbols;
+        CodingEvent.end(event, true, (s.length() + n - 1) / n, out.getBitCount() - startBits);
     }
 
     /**
-     * Encodes a string with a specific number of characters.
+     * Encodes a single symbol of NUM_SYMBOLS characters.
      * Internal method. When in doubt use String encode(String);
-     * @param c The string to be encoded
-     * @param symbols the number of symbols that form each symbol.
-     * @return the encoding as a String
-     */
-    private String encode(String c, int symbols){
-        Node n = findNode(c);
-        int pos = detectSymbolNumber(c);
-        String encoding;
-        if (isNYTNode(n)) {
-            if (pos > 2 * REMAINDER - 1) { //We count from 0 in this program
-                pos -= REMAINDER;
-                encoding = (getEncoding(n) + getBinary(pos, EXPONENT));
-            } else {
-                encoding = (getEncoding(n) + getBinary(pos, EXPONENT + 1));
-            }
-            add(n,c);
-        }else{
-            encoding = getEncoding(n);
-            add(n,c);
+     * @param symbol The symbol number of the symbol to be encoded
+     * @param out the BitWriter the encoding is written to
+     * @throws IOException when the encoding can not be written
+     */
+    void encodeSymbol(int symbol, BitWriter out) throws IOException{
+        int n = findNode(symbol);
+        int codeBits = writeEncoding(n, out);
+        int escapeBits = 0;
+        if (n == nyt) {
+            escapeBits = writeEscape(symbol, out);
+        }
+        metrics.symbol(codeBits, escapeBits);
+        add(n, symbol);
+    }
+
+    /**
+     * Encodes a symbol only if the tree has seen it, for a model that escapes to another tree otherwise (see
+     * ContextCoder). For a new symbol only the NYT code is written, and the tree is not changed: the caller adds the
+     * symbol once it has been coded elsewhere. An empty tree writes nothing, as every symbol is new to it.
+     * @param symbol the symbol number
+     * @param out the BitWriter the encoding is written to
+     * @return true if the symbol was encoded, false if only its escape was
+     * @throws IOException when the encoding can not be written
+     */
+    boolean encodeIfKnown(int symbol, BitWriter out) throws IOException{
+        if (size == 1) return false;
+        int n = findNode(symbol);
+        metrics.symbol(writeEncoding(n, out), 0);
+        if (n == nyt) return false;
+        add(n, symbol);
+        return true;
+    }
+
+    /**
+     * Decodes a symbol written by encodeIfKnown
+     * @param in the BitReader to read from
+     * @return the symbol number, or -1 if the symbol was new, which the caller adds once it has decoded it
+     * @throws IOException when the bits can not be read
+     * @throws InvalidSequenceException when the code ends part way through a symbol
+     */
+    int decodeIfKnown(BitReader in) throws IOException, InvalidSequenceException{
+        if (size == 1) return NONE;
+        int n = readLeaf(in);
+        if (n == nyt) return NONE;
+        int s = symbol[n];
+        add(n, s);
+        return s;
+    }
+
+    /**
+     * Decodes one symbol written by encodeSymbol, including any escape. Flush markers are not recognised.
+     * @param in the BitReader to read from
+     * @return the symbol number
+     * @throws IOException when the bits can not be read
+     * @throws InvalidSequenceException when the code ends part way through a symbol, or escapes a known symbol
+     */
+    int decodeSymbol(BitReader in) throws IOException, InvalidSequenceException{
+        int n;
+        if (size == 1){
+            //The empty tree sends its NYT node as a single 0
+            if (in.readBit() < 0) throw new InvalidSequenceException();
+            n = nyt;
+        }else {
+            n = readLeaf(in);
+        }
+        int s = (n == nyt) ? readEscape(in) : symbol[n];
+        if (n == nyt && leaves.get(s) != NONE) throw new InvalidSequenceException();
+        add(n, s);
+        return s;
+    }
+
+    /**
+     * Walks from the head to a leaf a bit at a time
+     * @return the leaf
+     */
+    private int readLeaf(BitReader in) throws IOException, InvalidSequenceException{
+        int n = 0;
+        while (left[n] != NONE){
+            int bit = in.readBit();
+            if (bit < 0) throw new InvalidSequenceException();
+            n = (bit == 1) ? right[n] : left[n];
+        }
+        return n;
+    }
+
+    /**
+     * Writes the symbol number that follows the NYT code for a symbol seen for the first time.
+     * @param pos the symbol number
+     * @param out the BitWriter the escape is written to
+     * @return the number of bits written
+     * @throws IOException when the escape can not be written
+     */
+    private int writeEscape(int pos, BitWriter out) throws IOException{
+        if (pos > 2 * REMAINDER - 1) { //We count from 0 in this program
+            pos -= REMAINDER;
+            out.write(pos, EXPONENT);
+            return EXPONENT;
+        } else {
+            out.write(pos, EXPONENT + 1);
+            return EXPONENT + 1;
+        }
+    }
+
+    /**
+     * @param pos a symbol number
+     * @return the length of its escape, see writeEscape
+     */
+    int escapeLength(int pos){
+        return (pos > 2 * REMAINDER - 1) ? EXPONENT : EXPONENT + 1;
+    }
+
+    /**
+     * Reads the symbol number that follows the NYT code, the counterpart of writeEscape.
+     * @param in the BitReader to read from
+     * @return the symbol number
+     * @throws IOException when the bits can not be read
+     * @throws InvalidSequenceException when the code ends part way through the escape
+     */
+    private int readEscape(BitReader in) throws IOException, InvalidSequenceException{
+        int value = in.readBits(EXPONENT);
+        if (value < 0) throw new InvalidSequenceException();
+        /* Adapt value if it is too small */
+        if (value < REMAINDER) {
+            int bit = in.readBit();
+            if (bit < 0) throw new InvalidSequenceException();
+            value = (value << 1) | bit;
+        } else { //if value > REMAINDER
+            value += REMAINDER;
         }
-        return encoding;
+        return value;
+    }
+
+    /**
+     * Pads the output to a byte boundary in a way the decoder can recognise, without changing the tree.
+     * The padding is announced by the NYT code followed by a symbol that is already in the tree, which the encoder
+     * never sends otherwise, and is followed by two zero bytes. A stream decoder holds back the last two bytes it
+     * has received in case they end the stream, so those bytes let it decode every symbol before the marker
+     * straight away. Nothing is written if the tree is still empty.
+     * @param out the BitWriter to align
+     * @throws IOException when the marker can not be written
+     */
+    void writeFlushMarker(BitWriter out) throws IOException{
+        if (size == 1) return;
+        //The node just before the NYT node is always a leaf, as no internal node can be numbered after both its
+        //children.
+        writeEncoding(nyt, out);
+        writeEscape(symbol[nyt - 1], out);
+        out.alignToByte();
+        out.write(0, FLUSH_BYTES * 8);
+    }
+
+    /**
+     * Sets where measurements of this tree are sent, such as a CountingMetrics. Trees start with TreeMetrics.NONE.
+     * @param metrics the metrics
+     */
+    public void setMetrics(TreeMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    TreeMetrics getMetrics(){
+        return metrics;
+    }
+
+    /**
+     * Sets the weight of the head at which the weight of every symbol is halved and the tree rebuilt. Lower limits
+     * let the tree follow input whose statistics change and bound the length of codes, as a code of d bits needs a
+     * head weight of roughly the (d+1)th Fibonacci number: a limit of 2^16 keeps codes to about 24 bits. The
+     * decoder must use the same limit as the encoder.
+     * @param limit the limit, at least twice the size of the alphabet so that halving always makes room
+     */
+    public void setRescaleLimit(int limit){
+        if (limit < minRescaleLimit(alphabet)){
+            throw new IllegalArgumentException("The rescale limit must be at least twice the size of the alphabet");
+        }
+        this.rescaleLimit = limit;
+        while (weight[0] >= rescaleLimit) rescale();
+    }
+
+    /**
+     * @param alphabet an alphabet
+     * @return the lowest rescale limit of a tree of the alphabet, see setRescaleLimit
+     */
+    static int minRescaleLimit(Alphabet alphabet){
+        return (int)Math.min(2L * alphabet.size, Integer.MAX_VALUE);
+    }
+
+    int getRescaleLimit(){
+        return rescaleLimit;
+    }
+
+    /**
+     * @return the alphabet, which numbers the symbols
+     */
+    Alphabet getAlphabet(){
+        return alphabet;
+    }
+
+    /* Access for StreamDecoder, which walks the tree a bit at a time */
+
+    int getExponent(){
+        return EXPONENT;
+    }
+
+    int getRemainder(){
+        return REMAINDER;
+    }
+
+    boolean isLeaf(int n){
+        return left[n] == NONE;
+    }
+
+    int getParent(int n){
+        return parent[n];
+    }
+
+    int getWeight(int n){
+        return weight[n];
+    }
 
+    int child(int n, int bit){
+        return (bit == 1) ? right[n] : left[n];
+    }
+
+    int getNYT(){
+        return nyt;
+    }
+
+    int getSymbol(int n){
+        return symbol[n];
+    }
+
+    boolean contains(int s){
+        return leaves.get(s) != NONE;
     }
 
     /**
-     * Decodes a specific code generated by this tree. Should be as a String representing the binary. If not a String
-     * can be created using the createBinary method. Output is written to a file decided in the constructor.
-     * @param r the FileReader with the open file
+     * Decodes a specific code generated by this tree, read as packed bits. Output is written to a file decided in
+     * the constructor.
+     * @param in the stream with the encoded file open
      * @throws IOException when there is difficulty reading the file or writing the output
      * @throws InvalidSequenceException when the sequence given does not form a valid tree
      */
-    public void decode(FileReader r) throws IOException, InvalidSequenceException{
-        BufferedReader br = new BufferedReader(r);
-        output.append(decode(br.readLine(), NUM_SYMBOLS));
+    public void decode(InputStream in) throws IOException, InvalidSequenceException{
+        OutputStream output = openOutput();
+        decode(in, output);
         output.close();
-        br.close();
+        in.close();
     }
 
     /**
-     * Decodes a specific code generated by this tree. Should be as a String representing the binary. If not a String
-     * can be created using the createBinary method.
+     * Decodes a stream of packed bits generated by this tree and writes the characters to another. Neither stream is
+     * closed.
+     * @param in the stream with the encoding, read to its end
+     * @param out the stream the decoding is written to
+     * @throws IOException when there is difficulty reading or writing either stream
+     * @throws InvalidSequenceException when the sequence given does not form a valid tree
+     */
+    @Override
+    public void decode(InputStream in, OutputStream out) throws IOException, InvalidSequenceException{
+        //The stream is decoded a buffer at a time, so memory use does not depend on its size
+        StreamDecoder decoder = new StreamDecoder(this);
+        byte[] bytes = new byte[StreamEncoder.BUFFER_SIZE];
+        int read = in.read(bytes);
+        while (read >= 0){
+            decoder.setInput(bytes, 0, read);
+            decoder.decode(out);
+            read = in.read(bytes);
+        }
+        decoder.finish();
+        decoder.decode(out);
+    }
+
+    /**
+     * Decodes a channel of packed bits generated by this tree and writes the characters to another. As with
+     * encode(ReadableByteChannel, WritableByteChannel), a large file is memory-mapped and the characters are written
+     * straight into a direct buffer that is written to the channel. Neither channel is closed.
+     * @param in the channel with the encoding, read to its end
+     * @param out the channel the decoding is written to
+     * @throws IOException when there is difficulty reading or writing either channel
+     * @throws InvalidSequenceException when the sequence given does not form a valid tree
+     */
+    @Override
+    public void decode(ReadableByteChannel in, WritableByteChannel out) throws IOException, InvalidSequenceException{
+        StreamDecoder decoder = new StreamDecoder(this, out);
+        ChannelInput input = new ChannelInput(in);
+        for (ByteBuffer piece = input.next(); piece != null; piece = input.next()){
+            decoder.setInput(piece);
+            decoder.decode();
+        }
+        decoder.finish();
+        decoder.decode();
+    }
+
+    /**
+     * @return where the methods without an output stream write: the output file, opened now, or the stream given
+     * to the constructor
+     * @throws IOException when the output file can not be opened
+     */
+    private OutputStream openOutput() throws IOException{
+        if (outputPath != null) return new FileOutputStream(outputPath);
+        if (output == null) throw new IllegalStateException("This tree has no output, pass a stream to write to");
+        return output;
+    }
+
+    /**
+     * Decodes packed bits produced by encode(byte[]), without touching the output file. Characters are returned as
+     * raw bytes, so this is the way to decode binary files in byte mode.
+     * @param code the encoding
+     * @return the bytes decoded
+     * @throws InvalidSequenceException when the sequence given does not form a valid tree
+     */
+    @Override
+    public byte[] decode(byte[] code) throws InvalidSequenceException{
+        return decode(ByteBuffer.wrap(code));
+    }
+
+    /**
+     * Decodes the remaining bytes of a buffer, packed bits produced by encode(ByteBuffer), without touching the output
+     * file. The buffer's position is moved to its limit.
+     * @param code the encoding
+     * @return the bytes decoded
+     * @throws InvalidSequenceException when the sequence given does not form a valid tree
+     */
+    @Override
+    public byte[] decode(ByteBuffer code) throws InvalidSequenceException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(code.remaining() * 2 + 16);
+        StreamDecoder decoder = new StreamDecoder(this);
+        try {
+            decoder.setInput(code);
+            decoder.decode(bytes);
+            decoder.finish();
+            decoder.decode(bytes);
+        }catch (IOException e){
+            //In memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a specific code generated by this tree. Should be as a String representing the binary, such as the
+     * String returned by encode(String).
      * @param s the String to be decoded
      * @throws InvalidSequenceException when the sequence given does not form a valid tree
      */
     public String decode(String s) throws InvalidSequenceException{
-        return decode(s, NUM_SYMBOLS);
+        //sanity check
+        if (s.length() < EXPONENT+1) throw new InvalidSequenceException();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            BitWriter bw = new BitWriter(bytes);
+            for (int i = 0; i < s.length(); i++){
+                char c = s.charAt(i);
+                if (c != '0' && c != '1') throw new InvalidSequenceException();
+                bw.writeBit(c - '0');
+            }
+            bw.finish();
+            return decode(new BitReader(new ByteArrayInputStream(bytes.toByteArray())));
+        }catch (IOException e){
+            //In memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
-     * Internal method for decoding Strings.
-     * @param s The String to be decoded
-     * @param numberOfSymbols the number of characters that form each synbol
-     * @return the decoded version of this String
+     * Decodes packed bits produced by this tree until the reader is exhausted.
+     * @param in The BitReader to be decoded
+     * @return the decoded version of this code
+     * @throws IOException when the bits can not be read
      * @throws InvalidSequenceException when the given sequence does not form a valid tree
      */
-    private String decode(String s, int numberOfSymbols) throws InvalidSequenceException {
+    public String decode(BitReader in) throws IOException, InvalidSequenceException {
+        CodingEvent event = CodingEvent.start();
+        long start = System.nanoTime();
+        long symbols = 0;
+        long bitsRead = 0;
         StringBuilder decoding = new StringBuilder();
-        int currentChar = 0;
-        //sanity check
-        if (s.length() < EXPONENT+1) throw new InvalidSequenceException();
-        while (currentChar < s.length()) {
-            Node n = head;
+        while (in.hasMoreBits()) {
+            int n = 0;
+            int codeBits = 0;
+            //special case, the empty tree sends its NYT node as a single 0
+            if (left[n] == NONE) {
+                in.readBit();
+                codeBits++;
+            }
             //whilst we do not have an external node
             //keep searching to see what we find
-            //we keep characters here because we are reading whether to go left or right
-            while (!n.isLeaf() && currentChar < s.length()) {
-                if (s.charAt(currentChar) == '1') {
-                    n = n.right;
-                } else if (s.charAt(currentChar) == '0') {
-                    n = n.left;
-                } else {
-                    throw new InvalidSequenceException();
-                }
-                currentChar++;
+            while (left[n] != NONE) {
+                int bit = in.readBit();
+                if (bit < 0) throw new InvalidSequenceException();
+                codeBits++;
+                n = (bit == 1) ? right[n] : left[n];
             }
-            //special case
-            if (currentChar == 0) currentChar++;
             //Once we have gotten our external node
             //If we have seen this character before, eg is not 0-weighted
-            if (!isNYTNode(n)) {
-                String c = n.getValue();
-                decoding.append(c);
-                add(n, c);
+            if (n != nyt) {
+                alphabet.appendSymbol(symbol[n], decoding);
+                metrics.symbol(codeBits, 0);
+                add(n, symbol[n]);
+                bitsRead += codeBits;
                 //If we have never seen this value before we need to treat it differently
             } else { //if this is the first time we have ever saw this character
-                String input = s.substring(currentChar, currentChar + EXPONENT);
-                currentChar += EXPONENT;
-                int value = reverseBinary(input);
-                /* Adapt value if it is too small */
-                if (value < REMAINDER) {
-                    input = s.substring(currentChar - EXPONENT, currentChar + 1);
-                    value = reverseBinary(input);
-                    currentChar++;
-                } else { //if value > REMAINDER
-                    value += REMAINDER;
+                int value = readEscape(in);
+                if (leaves.get(value) != NONE){
+                    //A flush marker rather than a symbol, see writeFlushMarker
+                    in.alignToByte();
+                    if (in.readBits(FLUSH_BYTES * 8) != 0) throw new InvalidSequenceException();
+                    continue;
                 }
-                String c = detectSymbol(value, numberOfSymbols);
-                decoding.append(c);
-                add(c);
+                alphabet.appendSymbol(value, decoding);
+                metrics.symbol(codeBits, escapeLength(value));
+                add(nyt, value);
+                bitsRead += codeBits + escapeLength(value);
             }
+            symbols++;
         }
+        metrics.decodeTime(System.nanoTime() - start);
+        CodingEvent.end(event, false, symbols, bitsRead);
         return decoding.toString();
     }
 }